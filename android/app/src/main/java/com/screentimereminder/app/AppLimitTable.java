@@ -0,0 +1,451 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-app and per-group daily limits.
+ * App limits live in an array indexed by package id, groups keep the ids of
+ * their members, so a check reads today's per-app counters from the
+ * aggregation engine in O(1) per limited app instead of recomputing the day.
+ * Limits are stored by package name in files/app_limits.json, which the
+ * background process picks up again when the file changes.
+ */
+public class AppLimitTable {
+    private static final String TAG = "AppLimitTable";
+    private static final String FILE_NAME = "app_limits.json";
+    static final int APPROACHING_PERCENT = 90;
+    // Notification tags; tagged notifications never collide with the app's fixed ids
+    private static final String APP_NOTIFICATION_TAG = "app_limit:"; // + package name
+    private static final String GROUP_NOTIFICATION_TAG = "group_limit:"; // + group name
+    static final byte STATE_NONE = 0;
+    static final byte STATE_APPROACHING = 1;
+    static final byte STATE_REACHED = 2;
+    private static AppLimitTable instance;
+    private static final Object lock = new Object();
+
+    private final File file;
+    private final PackageDictionary dictionary;
+    private long loadedModified = -1;
+    private long stateDayStart = 0;
+
+    // Limits indexed by package id (milliseconds, 0 = no limit) and the ids that have one
+    private long[] appLimits = new long[64];
+    private byte[] appStates = new byte[64];
+    private int[] limitedIds = new int[0];
+    private final List<Group> groups = new ArrayList<>();
+
+    /**
+     * Limit shared by a set of packages, e.g. all social apps
+     */
+    private static class Group {
+        final String name;
+        final long limitMs;
+        final int[] packageIds;
+        byte state = STATE_NONE;
+
+        Group(String name, long limitMs, int[] packageIds) {
+            this.name = name;
+            this.limitMs = limitMs;
+            this.packageIds = packageIds;
+        }
+    }
+
+    private AppLimitTable(Context context) {
+        this.file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+        this.dictionary = PackageDictionary.getInstance(context);
+        reloadIfChanged();
+    }
+
+    public static AppLimitTable getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new AppLimitTable(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Set the daily limit of one app in minutes
+     */
+    public synchronized void setAppLimit(String packageName, long minutes) {
+        reloadIfChanged();
+        int id = dictionary.intern(packageName);
+        ensureCapacity(id + 1);
+        appLimits[id] = minutes * 60000;
+        appStates[id] = STATE_NONE;
+        rebuildLimitedIds();
+        save();
+    }
+
+    public synchronized boolean removeAppLimit(String packageName) {
+        reloadIfChanged();
+        int id = dictionary.intern(packageName);
+        if (id >= appLimits.length || appLimits[id] == 0) {
+            return false;
+        }
+        appLimits[id] = 0;
+        appStates[id] = STATE_NONE;
+        rebuildLimitedIds();
+        save();
+        return true;
+    }
+
+    /**
+     * Set the daily limit in minutes shared by a group of apps, replacing a group of the same name
+     */
+    public synchronized void setGroupLimit(String name, long minutes, List<String> packageNames) {
+        reloadIfChanged();
+        removeGroup(name);
+        int[] ids = new int[packageNames.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dictionary.intern(packageNames.get(i));
+        }
+        groups.add(new Group(name, minutes * 60000, ids));
+        save();
+    }
+
+    public synchronized boolean removeGroupLimit(String name) {
+        reloadIfChanged();
+        boolean removed = removeGroup(name);
+        if (removed) {
+            save();
+        }
+        return removed;
+    }
+
+    private boolean removeGroup(String name) {
+        Iterator<Group> iterator = groups.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().name.equals(name)) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * All limits with today's usage, for the plugin:
+     * {apps: [{packageName, limit, used}], groups: [{name, limit, packages, used}]} in minutes
+     */
+    public synchronized JSONObject toJson(UsageAggregationEngine engine) throws Exception {
+        reloadIfChanged();
+        JSONArray apps = new JSONArray();
+        for (int id : limitedIds) {
+            JSONObject app = new JSONObject();
+            app.put("packageName", dictionary.getPackageName(id));
+            app.put("limit", appLimits[id] / 60000);
+            app.put("used", engine.getAppTimeMs(id) / 60000.0);
+            apps.put(app);
+        }
+
+        JSONArray groupArray = new JSONArray();
+        for (Group group : groups) {
+            JSONObject entry = new JSONObject();
+            JSONArray packages = new JSONArray();
+            for (int id : group.packageIds) {
+                packages.put(dictionary.getPackageName(id));
+            }
+            entry.put("name", group.name);
+            entry.put("limit", group.limitMs / 60000);
+            entry.put("packages", packages);
+            entry.put("used", getGroupTime(engine, group) / 60000.0);
+            groupArray.put(entry);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("apps", apps);
+        result.put("groups", groupArray);
+        return result;
+    }
+
+    /**
+     * Compare every limit with today's counters and notify once per day when a
+     * limit is approached and when it is reached
+     */
+    public synchronized void check(Context context, UsageAggregationEngine engine, long dayStart) {
+        reloadIfChanged();
+        if (limitedIds.length == 0 && groups.isEmpty()) {
+            return;
+        }
+
+        if (dayStart != stateDayStart) {
+            stateDayStart = dayStart;
+            Arrays.fill(appStates, STATE_NONE);
+            for (Group group : groups) {
+                group.state = STATE_NONE;
+            }
+        }
+
+        NotificationService notificationService = null;
+        for (int id : limitedIds) {
+            long used = engine.getAppTimeMs(id);
+            byte state = getState(used, appLimits[id]);
+            if (state > appStates[id]) {
+                appStates[id] = state;
+                if (notificationService == null) {
+                    notificationService = new NotificationService(context);
+                }
+                String packageName = dictionary.getPackageName(id);
+                notify(notificationService, APP_NOTIFICATION_TAG + packageName,
+                    AppUsageTracker.getAppName(context, packageName),
+                    used, appLimits[id], state);
+            }
+        }
+
+        for (Group group : groups) {
+            long used = getGroupTime(engine, group);
+            byte state = getState(used, group.limitMs);
+            if (state > group.state) {
+                group.state = state;
+                if (notificationService == null) {
+                    notificationService = new NotificationService(context);
+                }
+                notify(notificationService, GROUP_NOTIFICATION_TAG + group.name, group.name,
+                    used, group.limitMs, state);
+            }
+        }
+    }
+
+    /**
+     * Earliest time at which a limit may cross its next threshold, or Long.MAX_VALUE
+     * if every limit is reached. Usage grows at most in real time, so for an app in
+     * the foreground this is exact until the next app switch. Apps that are not open
+     * could be opened right after planning, so their crossing is bounded by the
+     * remaining headroom, but never sooner than MIN_LIMIT_ALARM_SLACK so an idle app
+     * close to its limit doesn't keep waking the alarm.
+     */
+    public synchronized long getNextCrossing(UsageAggregationEngine engine, long now) {
+        reloadIfChanged();
+        long next = Long.MAX_VALUE;
+        for (int id : limitedIds) {
+            long crossing = getCrossing(engine.getAppTimeMs(id), appLimits[id], appStates[id], now);
+            next = Math.min(next, engine.isAppOpen(id) ? crossing : withSlack(crossing, now));
+        }
+
+        for (Group group : groups) {
+            long crossing = getCrossing(getGroupTime(engine, group), group.limitMs, group.state, now);
+            boolean open = false;
+            for (int id : group.packageIds) {
+                if (engine.isAppOpen(id)) {
+                    open = true;
+                    break;
+                }
+            }
+            next = Math.min(next, open ? crossing : withSlack(crossing, now));
+        }
+        return next;
+    }
+
+    /**
+     * A crossing that can only happen after an app switch, pushed at least MIN_LIMIT_ALARM_SLACK out
+     */
+    static long withSlack(long crossing, long now) {
+        return crossing == Long.MAX_VALUE ? crossing : Math.max(crossing, now + SettingsConstants.MIN_LIMIT_ALARM_SLACK);
+    }
+
+    static long getCrossing(long usedMs, long limitMs, byte state, long now) {
+        if (state == STATE_NONE) {
+            long approachingMs = limitMs * APPROACHING_PERCENT / 100;
+            return now + Math.max(0, approachingMs - usedMs);
+        }
+        if (state == STATE_APPROACHING) {
+            return now + Math.max(0, limitMs - usedMs);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static void notify(NotificationService notificationService, String notificationTag,
+            String label, long usedMs, long limitMs, byte state) {
+        int usedMinutes = (int) (usedMs / 60000);
+        int limitMinutes = (int) (limitMs / 60000);
+        notificationService.showAppLimitNotification(notificationTag, label, usedMinutes, limitMinutes,
+            state == STATE_REACHED);
+        Log.d(TAG, String.format("%s: %d of %d minutes used", label, usedMinutes, limitMinutes));
+    }
+
+    static byte getState(long usedMs, long limitMs) {
+        if (limitMs <= 0) {
+            return STATE_NONE;
+        }
+        if (usedMs >= limitMs) {
+            return STATE_REACHED;
+        }
+        if (usedMs * 100 >= limitMs * APPROACHING_PERCENT) {
+            return STATE_APPROACHING;
+        }
+        return STATE_NONE;
+    }
+
+    private static long getGroupTime(UsageAggregationEngine engine, Group group) {
+        long total = 0;
+        for (int id : group.packageIds) {
+            total += engine.getAppTimeMs(id);
+        }
+        return total;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= appLimits.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, appLimits.length * 2);
+        appLimits = Arrays.copyOf(appLimits, newCapacity);
+        appStates = Arrays.copyOf(appStates, newCapacity);
+    }
+
+    private void rebuildLimitedIds() {
+        int count = 0;
+        for (long limit : appLimits) {
+            if (limit > 0) {
+                count++;
+            }
+        }
+        limitedIds = new int[count];
+        int index = 0;
+        for (int id = 0; id < appLimits.length; id++) {
+            if (appLimits[id] > 0) {
+                limitedIds[index++] = id;
+            }
+        }
+    }
+
+    /**
+     * Reload the table if the file was written since it was last read (e.g. by the other process)
+     */
+    private void reloadIfChanged() {
+        long modified = file.exists() ? file.lastModified() : 0;
+        if (modified == loadedModified) {
+            return;
+        }
+        loadedModified = modified;
+
+        // Keep today's notification state of limits that survive the reload, so editing
+        // one limit doesn't re-notify every other; a changed limit starts over like
+        // setAppLimit and setGroupLimit do in the process that wrote the file
+        long[] previousLimits = appLimits.clone();
+        Map<String, Group> previousGroups = new HashMap<>();
+        for (Group group : groups) {
+            previousGroups.put(group.name, group);
+        }
+        Arrays.fill(appLimits, 0);
+        groups.clear();
+        if (modified == 0) {
+            resetChangedStates(previousLimits, appLimits, appStates);
+            rebuildLimitedIds();
+            return;
+        }
+
+        try {
+            StringBuilder content = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    content.append(line);
+                }
+            }
+
+            JSONObject limits = new JSONObject(content.toString());
+            JSONObject apps = limits.optJSONObject("apps");
+            if (apps != null) {
+                Iterator<String> keys = apps.keys();
+                while (keys.hasNext()) {
+                    String packageName = keys.next();
+                    int id = dictionary.intern(packageName);
+                    ensureCapacity(id + 1);
+                    appLimits[id] = apps.getLong(packageName) * 60000;
+                }
+            }
+
+            JSONArray groupArray = limits.optJSONArray("groups");
+            if (groupArray != null) {
+                for (int i = 0; i < groupArray.length(); i++) {
+                    JSONObject group = groupArray.getJSONObject(i);
+                    JSONArray packages = group.getJSONArray("packages");
+                    int[] ids = new int[packages.length()];
+                    for (int j = 0; j < ids.length; j++) {
+                        ids[j] = dictionary.intern(packages.getString(j));
+                    }
+                    Group loaded = new Group(group.getString("name"), group.getLong("limit") * 60000, ids);
+                    Group previous = previousGroups.get(loaded.name);
+                    if (previous != null && previous.limitMs == loaded.limitMs) {
+                        loaded.state = previous.state;
+                    }
+                    groups.add(loaded);
+                }
+            }
+            Log.d(TAG, "Loaded limits for " + (apps != null ? apps.length() : 0) + " apps and "
+                + groups.size() + " groups");
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading app limits", e);
+        }
+        resetChangedStates(previousLimits, appLimits, appStates);
+        rebuildLimitedIds();
+    }
+
+    /**
+     * Clear the notification state of every app whose limit differs from before a reload
+     */
+    static void resetChangedStates(long[] previousLimits, long[] limits, byte[] states) {
+        for (int id = 0; id < limits.length && id < states.length; id++) {
+            long previous = id < previousLimits.length ? previousLimits[id] : 0;
+            if (limits[id] != previous) {
+                states[id] = STATE_NONE;
+            }
+        }
+    }
+
+    private void save() {
+        try {
+            JSONObject apps = new JSONObject();
+            for (int id : limitedIds) {
+                apps.put(dictionary.getPackageName(id), appLimits[id] / 60000);
+            }
+
+            JSONArray groupArray = new JSONArray();
+            for (Group group : groups) {
+                JSONArray packages = new JSONArray();
+                for (int id : group.packageIds) {
+                    packages.put(dictionary.getPackageName(id));
+                }
+                JSONObject entry = new JSONObject();
+                entry.put("name", group.name);
+                entry.put("limit", group.limitMs / 60000);
+                entry.put("packages", packages);
+                groupArray.put(entry);
+            }
+
+            JSONObject limits = new JSONObject();
+            limits.put("apps", apps);
+            limits.put("groups", groupArray);
+
+            File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+            try (FileWriter writer = new FileWriter(tempFile)) {
+                writer.write(limits.toString());
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not move limits file into place");
+            }
+            loadedModified = file.lastModified();
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving app limits", e);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent per-package metadata: label, category, system flag, version code
+ * and icon content hash. Entries are indexed by PackageDictionary id and
+ * stored by package name in files/app_metadata.json, which is read in one go
+ * when the catalog is created, so known apps need no PackageManager calls
+ * after a restart. An entry is only resolved again when the package's
+ * lastUpdateTime changes (checked in bulk by refresh()) or a package
+ * broadcast invalidates it.
+ */
+public class AppMetadataCatalog {
+    private static final String TAG = "AppMetadataCatalog";
+    private static final String FILE_NAME = "app_metadata.json";
+    private static AppMetadataCatalog instance;
+    private static final Object lock = new Object();
+
+    private final Context context;
+    private final File file;
+    private final PackageDictionary dictionary;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private Entry[] entries = new Entry[64];
+    private boolean savePending = false;
+
+    /**
+     * Metadata of one installed package
+     */
+    public static class Entry {
+        public final String label;
+        public final String category;
+        public final boolean system;
+        public final long versionCode;
+        public final long lastUpdateTime;
+        // Hash of the rendered icon, empty until the icon was loaded once
+        public final String iconHash;
+
+        Entry(String label, String category, boolean system, long versionCode, long lastUpdateTime,
+                String iconHash) {
+            this.label = label;
+            this.category = category;
+            this.system = system;
+            this.versionCode = versionCode;
+            this.lastUpdateTime = lastUpdateTime;
+            this.iconHash = iconHash;
+        }
+
+        Entry withIconHash(String newIconHash) {
+            return new Entry(label, category, system, versionCode, lastUpdateTime, newIconHash);
+        }
+    }
+
+    private AppMetadataCatalog(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(this.context.getFilesDir(), FILE_NAME);
+        this.dictionary = PackageDictionary.getInstance(this.context);
+        load();
+    }
+
+    public static AppMetadataCatalog getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new AppMetadataCatalog(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Entry of a package, resolved from PackageManager on a miss.
+     * Returns null if the package is not installed.
+     */
+    public Entry get(String packageName) {
+        int id = dictionary.intern(packageName);
+        synchronized (this) {
+            if (id < entries.length && entries[id] != null) {
+                return entries[id];
+            }
+        }
+
+        Entry entry = resolve(packageName);
+        if (entry != null) {
+            put(id, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Cached entry only, without touching PackageManager
+     */
+    public synchronized Entry peek(int packageId) {
+        return packageId < entries.length ? entries[packageId] : null;
+    }
+
+    /**
+     * Record the content hash of a package's icon
+     */
+    public void setIconHash(String packageName, String iconHash) {
+        int id = dictionary.intern(packageName);
+        synchronized (this) {
+            Entry entry = id < entries.length ? entries[id] : null;
+            if (entry == null || iconHash.equals(entry.iconHash)) {
+                return;
+            }
+            entries[id] = entry.withIconHash(iconHash);
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Drop the entry of a package after it was added, removed or replaced
+     */
+    public void invalidate(String packageName) {
+        int id = dictionary.getId(packageName);
+        synchronized (this) {
+            if (id < 0 || id >= entries.length || entries[id] == null) {
+                return;
+            }
+            entries[id] = null;
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Compare every entry with the installed packages in one PackageManager call,
+     * re-resolving packages whose lastUpdateTime changed and dropping uninstalled ones
+     */
+    public void refresh() {
+        List<PackageInfo> installed;
+        try {
+            installed = context.getPackageManager().getInstalledPackages(0);
+        } catch (Exception e) {
+            // Large package lists can exceed the binder limit, entries are then refreshed by broadcasts only
+            Log.e(TAG, "Error listing installed packages", e);
+            return;
+        }
+
+        boolean[] stillInstalled;
+        synchronized (this) {
+            stillInstalled = new boolean[entries.length];
+        }
+        int updated = 0;
+        for (PackageInfo packageInfo : installed) {
+            // Only packages we have entries for, interning the whole list would grow the dictionary file
+            int id = dictionary.getId(packageInfo.packageName);
+            Entry entry = id >= 0 ? peek(id) : null;
+            if (entry == null) {
+                continue;
+            }
+            if (id < stillInstalled.length) {
+                stillInstalled[id] = true;
+            }
+            if (entry.lastUpdateTime != packageInfo.lastUpdateTime) {
+                put(id, fromPackageInfo(packageInfo));
+                updated++;
+            }
+        }
+
+        int removed = 0;
+        synchronized (this) {
+            for (int id = 0; id < stillInstalled.length; id++) {
+                if (entries[id] != null && !stillInstalled[id]) {
+                    entries[id] = null;
+                    removed++;
+                }
+            }
+        }
+        if (updated > 0 || removed > 0) {
+            Log.d(TAG, "Refreshed " + updated + " and removed " + removed + " catalog entries");
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Content hash used to identify icon bytes
+     */
+    public static String contentHash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            // SHA-1 is always available on Android, fall back to a weaker hash just in case
+            return Integer.toHexString(Arrays.hashCode(data));
+        }
+    }
+
+    private Entry resolve(String packageName) {
+        try {
+            return fromPackageInfo(context.getPackageManager().getPackageInfo(packageName, 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error resolving metadata for " + packageName, e);
+            return null;
+        }
+    }
+
+    private Entry fromPackageInfo(PackageInfo packageInfo) {
+        PackageManager packageManager = context.getPackageManager();
+        ApplicationInfo appInfo = packageInfo.applicationInfo;
+        String label = appInfo != null
+            ? packageManager.getApplicationLabel(appInfo).toString()
+            : packageInfo.packageName;
+        boolean system = appInfo != null && AppUsageTracker.isSystemApp(context, appInfo);
+        long versionCode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+            ? packageInfo.getLongVersionCode()
+            : packageInfo.versionCode;
+        return new Entry(label, AppRules.getInstance(context).getCategoryForApp(label), system,
+            versionCode, packageInfo.lastUpdateTime, "");
+    }
+
+    private void put(int id, Entry entry) {
+        synchronized (this) {
+            if (id >= entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(id + 1, entries.length * 2));
+            }
+            entries[id] = entry;
+        }
+        scheduleSave();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            byte[] data;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                data = new byte[(int) raf.length()];
+                raf.readFully(data);
+            }
+
+            JSONObject apps = new JSONObject(new String(data, StandardCharsets.UTF_8)).getJSONObject("apps");
+            Iterator<String> keys = apps.keys();
+            int count = 0;
+            while (keys.hasNext()) {
+                String packageName = keys.next();
+                JSONObject app = apps.getJSONObject(packageName);
+                int id = dictionary.intern(packageName);
+                Entry entry = new Entry(
+                    app.getString("label"),
+                    app.getString("category"),
+                    app.getBoolean("system"),
+                    app.getLong("versionCode"),
+                    app.getLong("lastUpdateTime"),
+                    app.optString("iconHash", ""));
+                synchronized (this) {
+                    if (id >= entries.length) {
+                        entries = Arrays.copyOf(entries, Math.max(id + 1, entries.length * 2));
+                    }
+                    entries[id] = entry;
+                }
+                count++;
+            }
+            Log.d(TAG, "Loaded metadata for " + count + " packages");
+        } catch (Exception e) {
+            // A damaged catalog is only a cache, start over
+            Log.e(TAG, "Error loading app metadata catalog", e);
+        }
+    }
+
+    /**
+     * Coalesce bursts of changes (e.g. the first getAppUsageData after install) into one write
+     */
+    private void scheduleSave() {
+        synchronized (this) {
+            if (savePending) {
+                return;
+            }
+            savePending = true;
+        }
+        saveExecutor.execute(this::save);
+    }
+
+    private void save() {
+        try {
+            JSONObject apps = new JSONObject();
+            synchronized (this) {
+                savePending = false;
+                for (int id = 0; id < entries.length; id++) {
+                    Entry entry = entries[id];
+                    if (entry == null) {
+                        continue;
+                    }
+                    JSONObject app = new JSONObject();
+                    app.put("label", entry.label);
+                    app.put("category", entry.category);
+                    app.put("system", entry.system);
+                    app.put("versionCode", entry.versionCode);
+                    app.put("lastUpdateTime", entry.lastUpdateTime);
+                    app.put("iconHash", entry.iconHash);
+                    apps.put(dictionary.getPackageName(id), app);
+                }
+            }
+
+            JSONObject catalog = new JSONObject();
+            catalog.put("apps", apps);
+
+            // Both processes write this file, give each its own temp file
+            File tempFile = new File(file.getParentFile(), FILE_NAME + "." + android.os.Process.myPid() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(catalog.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not move catalog file into place");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving app metadata catalog", e);
+        }
+    }
+}
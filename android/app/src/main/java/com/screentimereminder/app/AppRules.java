@@ -0,0 +1,228 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keyword rules for classifying apps by package name or label.
+ * All keyword groups from res/raw/app_rules.txt are compiled into one
+ * Aho-Corasick automaton, so a single pass over the name returns every
+ * matching group as a bit mask instead of running each keyword's contains
+ * check in turn. The "common" group marks system apps that are still
+ * tracked; the other groups are categories in priority order.
+ */
+public class AppRules {
+    private static final String TAG = "AppRules";
+    private static final String COMMON_GROUP = "common";
+    private static final String DEFAULT_CATEGORY = "Other";
+    // Groups are bits of an int mask
+    private static final int MAX_GROUPS = 32;
+    private static AppRules instance;
+    private static final Object lock = new Object();
+
+    private final List<String> groups = new ArrayList<>();
+    private int commonMask = 0;
+    private int categoryMask = 0;
+
+    // Characters that appear in some keyword, everything else resets the match
+    private final int[] alphabet = new int[128];
+    private int alphabetSize = 1;
+
+    // Automaton: transitions[state * alphabetSize + symbol], output mask per state
+    private int[] transitions;
+    private int[] outputs;
+
+    /**
+     * Compile the rules read from reader, in the format of res/raw/app_rules.txt
+     */
+    AppRules(BufferedReader reader) throws IOException {
+        List<List<String>> keywords = new ArrayList<>();
+        parse(reader, keywords);
+        compile(keywords);
+        Log.d(TAG, "Compiled " + groups.size() + " rule groups into " + outputs.length + " states");
+    }
+
+    public static AppRules getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = load(context.getApplicationContext());
+            }
+            return instance;
+        }
+    }
+
+    private static AppRules load(Context context) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getResources().openRawResource(R.raw.app_rules), StandardCharsets.UTF_8))) {
+            return new AppRules(reader);
+        } catch (IOException e) {
+            // Without rules nothing is common and everything is "Other"
+            Log.e(TAG, "Error loading app rules", e);
+        }
+        try {
+            return new AppRules(new BufferedReader(new StringReader("")));
+        } catch (IOException e) {
+            // Unreachable, reading a string can't fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Bit mask of every group with a keyword occurring in name (case-insensitive)
+     */
+    public int match(String name) {
+        int state = 0;
+        int mask = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            int symbol = c < 128 ? alphabet[c] : 0;
+            state = transitions[state * alphabetSize + symbol];
+            mask |= outputs[state];
+        }
+        return mask;
+    }
+
+    /**
+     * Whether a system app should still be tracked
+     */
+    public boolean isCommon(int mask) {
+        return (mask & commonMask) != 0;
+    }
+
+    public boolean isCommonApp(String packageName) {
+        return isCommon(match(packageName));
+    }
+
+    /**
+     * Highest-priority category in the mask, or "Other"
+     */
+    public String getCategory(int mask) {
+        int matched = mask & categoryMask;
+        if (matched == 0) {
+            return DEFAULT_CATEGORY;
+        }
+        // Groups are numbered in file order, so the lowest bit wins
+        return groups.get(Integer.numberOfTrailingZeros(matched));
+    }
+
+    public String getCategoryForApp(String appName) {
+        return getCategory(match(appName));
+    }
+
+    private void parse(BufferedReader reader, List<List<String>> keywords) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            int colon = line.indexOf(':');
+            if (line.isEmpty() || line.startsWith("#") || colon <= 0) {
+                continue;
+            }
+            if (groups.size() == MAX_GROUPS) {
+                Log.e(TAG, "Too many rule groups, ignoring " + line);
+                continue;
+            }
+
+            String group = line.substring(0, colon).trim();
+            int bit = 1 << groups.size();
+            groups.add(group);
+            if (COMMON_GROUP.equals(group)) {
+                commonMask |= bit;
+            } else {
+                categoryMask |= bit;
+            }
+
+            List<String> words = new ArrayList<>();
+            for (String word : line.substring(colon + 1).trim().split("\\s+")) {
+                if (!word.isEmpty()) {
+                    words.add(word.toLowerCase());
+                }
+            }
+            keywords.add(words);
+        }
+    }
+
+    private void compile(List<List<String>> keywords) {
+        // Symbol 0 is every character that no keyword uses
+        for (List<String> words : keywords) {
+            for (String word : words) {
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    if (c < 128 && alphabet[c] == 0) {
+                        alphabet[c] = alphabetSize++;
+                    }
+                }
+            }
+        }
+
+        // Trie, 0 meaning no edge (the root is never a child)
+        int capacity = 64;
+        int[] trie = new int[capacity * alphabetSize];
+        int[] out = new int[capacity];
+        int states = 1;
+        for (int g = 0; g < keywords.size(); g++) {
+            for (String word : keywords.get(g)) {
+                int state = 0;
+                for (int i = 0; i < word.length(); i++) {
+                    char c = word.charAt(i);
+                    if (c >= 128) {
+                        // Unmatchable after per-character lowercasing, skip the keyword
+                        state = -1;
+                        break;
+                    }
+                    int edge = state * alphabetSize + alphabet[c];
+                    if (trie[edge] == 0) {
+                        if (states == capacity) {
+                            capacity *= 2;
+                            trie = Arrays.copyOf(trie, capacity * alphabetSize);
+                            out = Arrays.copyOf(out, capacity);
+                        }
+                        trie[edge] = states++;
+                    }
+                    state = trie[edge];
+                }
+                if (state > 0) {
+                    out[state] |= 1 << g;
+                }
+            }
+        }
+
+        // Breadth-first over the trie: fill missing edges from the failure state
+        // (turning the trie into a DFA) and inherit the failure state's outputs
+        transitions = Arrays.copyOf(trie, states * alphabetSize);
+        outputs = Arrays.copyOf(out, states);
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int symbol = 1; symbol < alphabetSize; symbol++) {
+            int child = transitions[symbol];
+            if (child != 0) {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] |= outputs[fail[state]];
+            for (int symbol = 1; symbol < alphabetSize; symbol++) {
+                int edge = state * alphabetSize + symbol;
+                int child = transitions[edge];
+                if (child != 0) {
+                    fail[child] = transitions[fail[state] * alphabetSize + symbol];
+                    queue[tail++] = child;
+                } else {
+                    transitions[edge] = transitions[fail[state] * alphabetSize + symbol];
+                }
+            }
+        }
+    }
+}
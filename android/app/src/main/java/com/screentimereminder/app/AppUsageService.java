@@ -9,7 +9,6 @@ import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
@@ -21,8 +20,6 @@ import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
-import java.util.Calendar;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.json.JSONArray;
@@ -39,7 +36,7 @@ public class AppUsageService extends Service {
     private UsageStatsManager usageStatsManager;
     private String lastForegroundApp = "";
     private long lastUpdateTime = 0;
-    private Map<String, Long> appUsageMap = new HashMap<>();
+    private UsageAggregationEngine.Snapshot usageSnapshot;
     private PowerManager.WakeLock wakeLock;
 
     @Override
@@ -63,6 +60,7 @@ public class AppUsageService extends Service {
             
             // Setup update runnable
             setupUpdateRunnable();
+            ScreenStateCoordinator.getInstance(this).addListener(screenStateListener);
             
             // Acquire wake lock
             acquireWakeLock();
@@ -254,8 +252,8 @@ public class AppUsageService extends Service {
                 } catch (Exception e) {
                     Log.e(TAG, "Error in update runnable", e);
                 } finally {
-                    // Always schedule next update
-                    if (handler != null) {
+                    // Schedule next update while the screen is on, the screen-on callback restarts it
+                    if (handler != null && ScreenStateCoordinator.getInstance(AppUsageService.this).isInteractive()) {
                         handler.postDelayed(this, UPDATE_INTERVAL);
                     }
                 }
@@ -263,6 +261,21 @@ public class AppUsageService extends Service {
         };
     }
 
+    private final ScreenStateCoordinator.ScreenStateListener screenStateListener =
+            new ScreenStateCoordinator.ScreenStateListener() {
+        @Override
+        public void onScreenOff() {
+            if (handler != null && updateRunnable != null) {
+                handler.removeCallbacks(updateRunnable);
+            }
+        }
+
+        @Override
+        public void onScreenOn() {
+            startTracking();
+        }
+    };
+
     private void startTracking() {
         Log.d(TAG, "Starting tracking");
         if (handler != null && updateRunnable != null) {
@@ -277,54 +290,15 @@ public class AppUsageService extends Service {
             long currentTime = System.currentTimeMillis();
             Log.d(TAG, "Updating app usage at " + new java.util.Date(currentTime));
             
-            // Get start of day
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.HOUR_OF_DAY, 0);
-            calendar.set(Calendar.MINUTE, 0);
-            calendar.set(Calendar.SECOND, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            long startTime = calendar.getTimeInMillis();
-            
-            // Query for events since start of day
-            UsageEvents usageEvents = usageStatsManager.queryEvents(startTime, currentTime);
-            UsageEvents.Event event = new UsageEvents.Event();
-            
-            // Reset the map for today's data
-            appUsageMap.clear();
-            
-            String currentApp = null;
-            long lastEventTime = startTime;
-            
-            while (usageEvents.hasNextEvent()) {
-                usageEvents.getNextEvent(event);
-                
-                if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                    // New app came to foreground
-                    currentApp = event.getPackageName();
-                    lastEventTime = event.getTimeStamp();
-                    Log.d(TAG, "App moved to foreground: " + currentApp + " at " + new java.util.Date(lastEventTime));
-                    
-                } else if (event.getEventType() == UsageEvents.Event.MOVE_TO_BACKGROUND && currentApp != null) {
-                    // App went to background, update its time
-                    long timeSpent = event.getTimeStamp() - lastEventTime;
-                    if (timeSpent > 0) {
-                        updateAppUsageTime(currentApp, timeSpent);
-                        Log.d(TAG, String.format("Updated time for %s: +%d ms (total: %d ms)", 
-                            currentApp, timeSpent, appUsageMap.get(currentApp)));
-                    }
-                    currentApp = null;
-                }
+            // Read today's per-app totals from the shared aggregation engine
+            UsageAggregationEngine.Snapshot snapshot = UsageAggregationEngine.getInstance(this).refresh();
+            if (snapshot == null) {
+                Log.w(TAG, "No usage data available yet");
+                return;
             }
             
-            // Update time for the current foreground app
-            if (currentApp != null) {
-                long timeSpent = currentTime - lastEventTime;
-                if (timeSpent > 0) {
-                    updateAppUsageTime(currentApp, timeSpent);
-                    Log.d(TAG, String.format("Updated time for current app %s: +%d ms (total: %d ms)", 
-                        currentApp, timeSpent, appUsageMap.get(currentApp)));
-                }
-            }
+            // Keep today's snapshot for the broadcast
+            usageSnapshot = snapshot;
             
             // Broadcast the updated usage data
             broadcastUsageData();
@@ -334,31 +308,24 @@ public class AppUsageService extends Service {
         }
     }
 
-    private void updateAppUsageTime(String packageName, long timeSpent) {
-        long currentUsage = appUsageMap.getOrDefault(packageName, 0L);
-        appUsageMap.put(packageName, currentUsage + timeSpent);
-    }
-
     private void broadcastUsageData() {
+        if (usageSnapshot == null) {
+            return;
+        }
         try {
-            // Calculate total screen time
-            long totalScreenTime = 0;
-            for (Map.Entry<String, Long> entry : appUsageMap.entrySet()) {
-                if (!isSystemApp(entry.getKey())) {
-                    totalScreenTime += entry.getValue();
-                }
-            }
+            PackageDictionary dictionary = PackageDictionary.getInstance(this);
             
-            // Convert usage data to JSON
+            // Convert usage data to JSON, total screen time is the union of sessions
+            // so apps visible together are not counted twice
             JSONObject data = new JSONObject();
-            data.put("totalScreenTime", totalScreenTime / 60000.0); // Convert to minutes
+            data.put("totalScreenTime", usageSnapshot.getTotalTimeMs() / 60000.0); // Convert to minutes
             
             JSONArray apps = new JSONArray();
-            for (Map.Entry<String, Long> entry : appUsageMap.entrySet()) {
+            for (Map.Entry<String, Long> entry : usageSnapshot.getAppTimes().entrySet()) {
                 String packageName = entry.getKey();
                 
                 // Skip system apps and our own app
-                if (isSystemApp(packageName) || packageName.equals(getPackageName())) {
+                if (!dictionary.isTracked(dictionary.intern(packageName))) {
                     continue;
                 }
                 
@@ -380,16 +347,6 @@ public class AppUsageService extends Service {
         }
     }
 
-    private boolean isSystemApp(String packageName) {
-        try {
-            PackageManager packageManager = getPackageManager();
-            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-            return (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -400,6 +357,7 @@ public class AppUsageService extends Service {
         try {
             Log.d(TAG, "Service being destroyed");
             
+            ScreenStateCoordinator.getInstance(this).removeListener(screenStateListener);
             if (handler != null) {
                 handler.removeCallbacks(updateRunnable);
                 handler = null;
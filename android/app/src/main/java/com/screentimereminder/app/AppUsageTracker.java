@@ -6,7 +6,6 @@ package com.screentimereminder.app;
 import android.app.AppOpsManager;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.usage.UsageEvents;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
 import android.content.BroadcastReceiver;
@@ -21,9 +20,13 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.PowerManager;
 import android.provider.Settings;
+import android.util.JsonWriter;
 import android.util.Log;
+import android.util.SparseArray;
 import android.os.BatteryManager;
 
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -35,18 +38,21 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
-import java.util.HashSet;
-import java.util.Set;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import androidx.core.app.NotificationCompat;
 import android.appwidget.AppWidgetManager;
@@ -70,6 +76,10 @@ public class AppUsageTracker extends Plugin {
     public static final long DEFAULT_NOTIFICATION_FREQUENCY = 5L; // 5 minutes
     private UsageStatsManager usageStatsManager;
     private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> updateTask;
+    private ScheduledFuture<?> serviceCheckTask;
+    private long scheduledUpdateInterval = 0;
+    private boolean serviceChecksEnabled = false;
     private String currentForegroundApp = "";
     private Handler mainHandler;
     private NotificationService notificationService;
@@ -82,10 +92,9 @@ public class AppUsageTracker extends Plugin {
     private static final Object settingsLock = new Object();
     
     // Add these class variables for caching
-    private static final String ICON_CACHE_DIR = "icon_cache";
-    private static Map<String, String> iconCache = new HashMap<>();
-    private static long iconCacheLastCleanup = 0;
-    private static final long CACHE_CLEANUP_INTERVAL = 24 * 60 * 60 * 1000; // 24 hours
+    private static final int ICON_SIZE = 144;
+    private static final int ICON_QUALITY = 90;
+    private static final String PLACEHOLDER_ICON = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAJAAAACQBAMAAAAVaP+LAAAAHlBMVEX///8AAABSUlL09PSjo6M7OzshISGDg4O3t7dpaWmZfZ3LAAABzUlEQVRo3u3aS27kIBTG8XAMS2KP7Ygu+yTsf0UjRVGUDlWBn47a/6+EeHwfsK/NbbmzrjsoQIAAAQIECBAgQIAAAQIECBAgQIAAAfoIUDf3g/Ufo7s78vBoXOD0fc4GptfG2eDQmIfD2aB8bczBEVHV+Dna5XfRP44Zj2I52CMuahsrR7usNl6O1q02Xo6/q42Xg9eFOKKXg8cXiBzx5UD22NGObk8HmR072lF/gTNyNDrHjXXQCQ4yO3Z2EJ3iILNjZgeNrSsctOioo6gTHDPqaGeHDwf9rCNNB7dbnYfD0UHbHfSM59CjjtY7+HVoWh7x4LscPKOjzg6SOmjb9oLaF6jt4DnqaJODxA5a7SDxPLTSUeUOOm/bL9C27Q9o2/YHtG3/B2rb/oa2bbMj1kFYB0sd0Q4SO6IdJHZEO0jqCHeQ1BHtoA9ylNTRxDpI6hhiHTTZUcUOmuwIdhDrIKmDWAdJHcQ6SOoYYx0kdTSxDpI6hlgHzXZUsYPmOIIdxDpI6iDWQVIHsQ6SOsZYB0kdTayDpI4h1kF3+XlsYB0kdRDrIKmDpA5iHSR1EBvWpA5iQ5TUQUIHCR0kdBjHvwAAAP//m1pNlCv43RMAAAAASUVORK5CYII=";
     
     // Add battery management variables
     private BatteryManager batteryManager;
@@ -104,7 +113,48 @@ public class AppUsageTracker extends Plugin {
     // Background detection variables
     private static final long BACKGROUND_DETECTION_INTERVAL = 30 * 1000; // 30 seconds
     private static final long BACKGROUND_USAGE_THRESHOLD = 2 * 60 * 1000; // 2 minutes
-    private Map<String, AppUsageInfo> appUsageInfo = new HashMap<>();
+    private SparseArray<AppUsageInfo> appUsageInfo = new SparseArray<>(); // keyed by PackageDictionary id
+    
+    // Cache of serialized getAppUsageData results, invalidated by the event watermark
+    private final UsageQueryCache usageQueryCache = new UsageQueryCache();
+    
+    // Sequence-numbered delta state of the appUsageUpdate and backgroundUsage pushes
+    private final UsageDeltaChannel usageUpdateChannel = new UsageDeltaChannel();
+    private final UsageDeltaChannel backgroundUsageChannel = new UsageDeltaChannel();
+    
+    // Response buffer reused by calls on the backgroundExecutor
+    private final UsageJsonWriter usageJsonWriter = new UsageJsonWriter();
+    
+    // Ranked results behind getAppUsagePage cursors, only touched on the backgroundExecutor
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int DEFAULT_TOP_APPS = 5;
+    private static final int MAX_TOP_APPS = 1000;
+    private static final int MAX_PAGE_SESSIONS = 4;
+    private long pageSessionCounter = 0;
+    private final Map<String, RankedUsage> usagePageSessions = new LinkedHashMap<String, RankedUsage>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RankedUsage> eldest) {
+            return size() > MAX_PAGE_SESSIONS;
+        }
+    };
+    
+    /**
+     * Apps of a query sorted by time, kept so later pages don't re-aggregate
+     */
+    private static class RankedUsage {
+        final UsageQuery query;
+        final List<Map.Entry<String, Long>> apps;
+        final Map<String, Long> lastUsed;
+        final long totalTime;
+        
+        RankedUsage(UsageQuery query, List<Map.Entry<String, Long>> apps, Map<String, Long> lastUsed,
+                long totalTime) {
+            this.query = query;
+            this.apps = apps;
+            this.lastUsed = lastUsed;
+            this.totalTime = totalTime;
+        }
+    }
     private Handler backgroundDetectionHandler;
     private Runnable backgroundDetectionRunnable;
 
@@ -271,6 +321,9 @@ public class AppUsageTracker extends Plugin {
             backgroundDetectionHandler = new Handler(Looper.getMainLooper());
             backgroundDetectionRunnable = this::trackBackgroundUsage;
             
+            // Pause all periodic work while the screen is off
+            ScreenStateCoordinator.getInstance(context).addListener(screenStateListener);
+            
             // Initialize other components
             this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             this.usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
@@ -297,6 +350,21 @@ public class AppUsageTracker extends Plugin {
                 context.registerReceiver(refreshReceiver, filter);
             }
             
+            // The dictionary is per process, keep this process's classification cache current too
+            IntentFilter packageFilter = new IntentFilter();
+            packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+            packageFilter.addDataScheme("package");
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                context.registerReceiver(packageChangeReceiver, packageFilter, Context.RECEIVER_NOT_EXPORTED);
+            } else {
+                context.registerReceiver(packageChangeReceiver, packageFilter);
+            }
+            
+            // Read the metadata catalog in one go, then check it against the installed packages
+            backgroundExecutor.execute(() -> AppMetadataCatalog.getInstance(context).refresh());
+            
             Log.d(TAG, "AppUsageTracker plugin loaded successfully");
         } catch (Exception e) {
             Log.e(TAG, "Error in load", e);
@@ -324,6 +392,20 @@ public class AppUsageTracker extends Plugin {
         }
     };
 
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() != null) {
+                String packageName = intent.getData().getSchemeSpecificPart();
+                PackageDictionary.getInstance(context).invalidate(packageName);
+                int packageId = PackageDictionary.getInstance(context).getId(packageName);
+                if (packageId >= 0) {
+                    IconCache.getInstance(context).remove(packageId);
+                }
+            }
+        }
+    };
+
     @Override
     protected void handleOnDestroy() {
         try {
@@ -336,8 +418,14 @@ public class AppUsageTracker extends Plugin {
             } catch (Exception e) {
                 Log.e(TAG, "Error unregistering battery receiver", e);
             }
+            try {
+                getContext().unregisterReceiver(packageChangeReceiver);
+            } catch (Exception e) {
+                Log.e(TAG, "Error unregistering package receiver", e);
+            }
             
             // Stop tracking if active
+            ScreenStateCoordinator.getInstance(getContext()).removeListener(screenStateListener);
             if (scheduler != null && !scheduler.isShutdown()) {
                 scheduler.shutdown();
             }
@@ -406,20 +494,7 @@ public class AppUsageTracker extends Plugin {
             adjustTrackingForBatteryLevel();
             
             // Start periodic updates with battery-aware scheduling
-            if (scheduler == null || scheduler.isShutdown()) {
-                scheduler = Executors.newSingleThreadScheduledExecutor();
-                scheduler.scheduleAtFixedRate(() -> {
-                    try {
-                        if (isTracking) {
-                            updateAppUsage();
-                            // Readjust interval for next execution based on current battery
-                            adjustSchedulerInterval();
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error in periodic update", e);
-                    }
-                }, 0, currentUpdateInterval, TimeUnit.MILLISECONDS);
-            }
+            startPeriodicUpdates(0);
 
             call.resolve();
         } catch (Exception e) {
@@ -518,86 +593,107 @@ public class AppUsageTracker extends Plugin {
      * Adjust scheduler interval based on current battery level
      */
     private void adjustSchedulerInterval() {
-        if (scheduler != null && !scheduler.isShutdown()) {
-            try {
-                scheduler.shutdown();
-                scheduler = Executors.newSingleThreadScheduledExecutor();
-                scheduler.scheduleAtFixedRate(() -> {
-                    try {
-                        if (isTracking) {
-                            updateAppUsage();
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error in periodic update", e);
+        if (updateTask != null && scheduledUpdateInterval != currentUpdateInterval) {
+            startPeriodicUpdates(currentUpdateInterval);
+            Log.d(TAG, "Scheduler adjusted to interval: " + (currentUpdateInterval / 1000) + " seconds");
+        }
+    }
+    
+    private ScheduledExecutorService getScheduler() {
+        if (scheduler == null || scheduler.isShutdown()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return scheduler;
+    }
+    
+    /**
+     * (Re)start the periodic usage update at the current interval.
+     * While the screen is off nothing is scheduled; the screen-on callback starts it.
+     */
+    private synchronized void startPeriodicUpdates(long initialDelay) {
+        try {
+            if (updateTask != null) {
+                updateTask.cancel(false);
+                updateTask = null;
+            }
+            if (!ScreenStateCoordinator.getInstance(getContext()).isInteractive()) {
+                return;
+            }
+            
+            scheduledUpdateInterval = currentUpdateInterval;
+            updateTask = getScheduler().scheduleAtFixedRate(() -> {
+                try {
+                    if (isTracking) {
+                        updateAppUsage();
                     }
-                }, 0, currentUpdateInterval, TimeUnit.MILLISECONDS);
-                
-                Log.d(TAG, "Scheduler adjusted to interval: " + (currentUpdateInterval / 1000) + " seconds");
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in periodic update", e);
+                }
+            }, initialDelay, currentUpdateInterval, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting periodic updates", e);
+        }
+    }
+    
+    /**
+     * (Re)start the periodic check that the background service is alive
+     */
+    private synchronized void startServiceChecks() {
+        if (serviceCheckTask != null) {
+            serviceCheckTask.cancel(false);
+            serviceCheckTask = null;
+        }
+        if (!serviceChecksEnabled || !ScreenStateCoordinator.getInstance(getContext()).isInteractive()) {
+            return;
+        }
+        
+        serviceCheckTask = getScheduler().scheduleAtFixedRate(() -> {
+            try {
+                ensureServiceRunning();
             } catch (Exception e) {
-                Log.e(TAG, "Error adjusting scheduler interval", e);
+                Log.e(TAG, "Error in service check", e);
             }
+        }, 1, 5, TimeUnit.MINUTES);
+    }
+    
+    private synchronized void pausePeriodicTasks() {
+        if (updateTask != null) {
+            updateTask.cancel(false);
+            updateTask = null;
+        }
+        if (serviceCheckTask != null) {
+            serviceCheckTask.cancel(false);
+            serviceCheckTask = null;
         }
     }
     
+    private final ScreenStateCoordinator.ScreenStateListener screenStateListener =
+            new ScreenStateCoordinator.ScreenStateListener() {
+        @Override
+        public void onScreenOff() {
+            pausePeriodicTasks();
+            stopBackgroundDetection();
+        }
+        
+        @Override
+        public void onScreenOn() {
+            // The coordinator already caught up from the watermark, the first tick reuses that snapshot
+            if (isTracking) {
+                startPeriodicUpdates(0);
+                startBackgroundDetection();
+            }
+            startServiceChecks();
+        }
+    };
+    
     private void updateAppUsage() {
         try {
-            // Get current usage stats
-            UsageStatsManager usageStatsManager = (UsageStatsManager) getContext().getSystemService(Context.USAGE_STATS_SERVICE);
-            if (usageStatsManager != null) {
-                long dayStartTime = getStartOfDay();
-                long endTime = System.currentTimeMillis();
-                
-                // Query usage events for more accurate calculation
-                UsageEvents usageEvents = usageStatsManager.queryEvents(dayStartTime, endTime);
-                UsageEvents.Event event = new UsageEvents.Event();
-                float nativeTotalTime = 0;
-                String lastPackage = null;
-                long lastEventTime = 0;
-                
-                while (usageEvents.hasNextEvent()) {
-                    usageEvents.getNextEvent(event);
-                    String packageName = event.getPackageName();
-                    
-                    // Skip our own app and system apps
-                    if (packageName.equals(getContext().getPackageName()) || isSystemApp(getContext(), packageName)) {
-                        continue;
-                    }
-                    
-                    if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                        if (lastPackage != null && lastEventTime > 0) {
-                            // Calculate time spent in the last app
-                            long timeSpent = event.getTimeStamp() - lastEventTime;
-                            nativeTotalTime += timeSpent / (60f * 1000f);
-                        }
-                        lastPackage = packageName;
-                        lastEventTime = event.getTimeStamp();
-                    } else if (event.getEventType() == UsageEvents.Event.MOVE_TO_BACKGROUND) {
-                        if (lastPackage != null && lastEventTime > 0) {
-                            // Calculate time spent in the current app
-                            long timeSpent = event.getTimeStamp() - lastEventTime;
-                            nativeTotalTime += timeSpent / (60f * 1000f);
-                        }
-                        lastPackage = null;
-                        lastEventTime = 0;
-                    }
-                }
-                
-                // If there's still an active app, calculate its time up to now
-                if (lastPackage != null && lastEventTime > 0) {
-                    long timeSpent = endTime - lastEventTime;
-                    nativeTotalTime += timeSpent / (60f * 1000f);
-                }
-                
-                // Get the stored capacitor value
+            // Read today's totals from the shared engine (incremental since the last tick)
+            UsageAggregationEngine.Snapshot snapshot = UsageAggregationEngine.getInstance(getContext()).refresh();
+            if (snapshot != null) {
+                // The snapshot total is the union of sessions, no correction from the JS side needed
+                float finalTotalTime = snapshot.getTotalMinutes();
                 SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-                float capacitorTime = prefs.getFloat("capacitorScreenTime", 0);
-                long lastCapacitorUpdate = prefs.getLong("lastCapacitorUpdate", 0);
-                
-                // Use the higher value between native and capacitor, but only if capacitor value is recent (within 5 minutes)
-                float finalTotalTime = nativeTotalTime;
-                if (lastCapacitorUpdate > 0 && (System.currentTimeMillis() - lastCapacitorUpdate) < 5 * 60 * 1000) {
-                    finalTotalTime = Math.max(nativeTotalTime, capacitorTime);
-                }
                 
                 // Update shared preferences
                 SharedPreferences.Editor editor = prefs.edit();
@@ -652,6 +748,10 @@ public class AppUsageTracker extends Plugin {
      */
     private void startBackgroundDetection() {
         // Schedule the background detection
+        backgroundDetectionHandler.removeCallbacks(backgroundDetectionRunnable);
+        if (!ScreenStateCoordinator.getInstance(getContext()).isInteractive()) {
+            return;
+        }
         backgroundDetectionHandler.postDelayed(backgroundDetectionRunnable, BACKGROUND_DETECTION_INTERVAL);
         Log.d(TAG, "Started background usage detection");
     }
@@ -665,7 +765,10 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Track background app usage
+     * Track background app usage.
+     * Foreground state and time come from the aggregation engine's cursor, so this
+     * check agrees with today's totals; it only adds the time spent in the background
+     * between two foreground sessions.
      */
     private void trackBackgroundUsage() {
         if (!isTracking || usageStatsManager == null) {
@@ -673,120 +776,100 @@ public class AppUsageTracker extends Plugin {
         }
         
         try {
-            long now = System.currentTimeMillis();
-            long queryStart = now - BACKGROUND_DETECTION_INTERVAL * 2; // Look back further to catch events
-            
-            // Get usage events
-            UsageEvents events = usageStatsManager.queryEvents(queryStart, now);
-            if (events == null) {
-                Log.e(TAG, "UsageEvents is null");
+            UsageAggregationEngine engine = UsageAggregationEngine.getInstance(getContext());
+            UsageAggregationEngine.Snapshot snapshot = engine.refresh();
+            if (snapshot == null) {
+                Log.e(TAG, "Could not refresh usage");
                 return;
             }
+            long now = snapshot.getTimestamp();
+            PackageDictionary dictionary = PackageDictionary.getInstance(getContext());
+            SparseArray<AppUsageInfo> updatedApps = new SparseArray<>();
             
-            // Process usage events
-            UsageEvents.Event event = new UsageEvents.Event();
-            Map<String, Long> lastEventTimeMap = new HashMap<>();
-            Map<String, AppUsageInfo> updatedApps = new HashMap<>();
-            
-            while (events.hasNextEvent()) {
-                events.getNextEvent(event);
-                String packageName = event.getPackageName();
-                
-                // Skip our own app
-                if (packageName.equals(getContext().getPackageName())) {
-                    continue;
-                }
-                
-                // Skip system apps
-                if (isSystemApp(getContext(), packageName)) {
+            for (Map.Entry<String, Long> entry : snapshot.getAppTimes().entrySet()) {
+                int id = dictionary.getId(entry.getKey());
+                if (id < 0) {
                     continue;
                 }
                 
                 // Get or create AppUsageInfo
-                AppUsageInfo info = appUsageInfo.get(packageName);
+                AppUsageInfo info = appUsageInfo.get(id);
                 if (info == null) {
-                    String appName = getAppName(packageName);
-                    info = new AppUsageInfo(packageName, appName);
-                    appUsageInfo.put(packageName, info);
+                    info = new AppUsageInfo(entry.getKey(), getAppName(entry.getKey()));
+                    appUsageInfo.put(id, info);
                 }
                 
-                if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                    if (!info.isInForeground) {
-                        // App moving to foreground
-                        info.isInForeground = true;
-                        info.lastForegroundTime = event.getTimeStamp();
-                        
-                        // If it was in background before, calculate background time
-                        if (info.lastBackgroundTime > 0) {
-                            long bgTime = event.getTimeStamp() - info.lastBackgroundTime;
-                            if (bgTime > BACKGROUND_USAGE_THRESHOLD) {
-                                // Only count significant background time
-                                info.backgroundDuration += bgTime;
-                                updatedApps.put(packageName, info);
-                                Log.d(TAG, packageName + " was in background for " + (bgTime / 1000) + " seconds");
-                            }
-                        }
-                    }
-                } else if (event.getEventType() == UsageEvents.Event.MOVE_TO_BACKGROUND) {
-                    if (info.isInForeground) {
-                        // App moving to background
-                        info.isInForeground = false;
-                        info.lastBackgroundTime = event.getTimeStamp();
-                        
-                        // Calculate foreground duration
-                        if (info.lastForegroundTime > 0) {
-                            long fgTime = event.getTimeStamp() - info.lastForegroundTime;
-                            info.foregroundDuration += fgTime;
-                            updatedApps.put(packageName, info);
-                            Log.d(TAG, packageName + " was in foreground for " + (fgTime / 1000) + " seconds");
+                if (engine.isAppOpen(id) && !info.isInForeground) {
+                    // App moved to foreground
+                    info.isInForeground = true;
+                    info.lastForegroundTime = engine.getAppOpenSince(id);
+                    
+                    // If it was in background before, calculate background time
+                    if (info.lastBackgroundTime > 0) {
+                        long bgTime = info.lastForegroundTime - info.lastBackgroundTime;
+                        if (bgTime > BACKGROUND_USAGE_THRESHOLD) {
+                            // Only count significant background time
+                            info.backgroundDuration += bgTime;
+                            Log.d(TAG, info.packageName + " was in background for " + (bgTime / 1000) + " seconds");
                         }
                     }
+                    updatedApps.put(id, info);
+                }
+                
+                // Foreground time is today's total from the cursor, publish it once it moved by a minute
+                long fgTime = entry.getValue();
+                if (Math.abs(fgTime - info.foregroundDuration) >= 60000) {
+                    info.foregroundDuration = fgTime;
+                    updatedApps.put(id, info);
                 }
             }
             
-            // Check for apps still in foreground
-            for (AppUsageInfo info : appUsageInfo.values()) {
-                if (info.isInForeground && info.lastForegroundTime > 0) {
-                    long fgTime = now - info.lastForegroundTime;
-                    // Track ongoing foreground usage
-                    Log.d(TAG, info.packageName + " is still in foreground for " + (fgTime / 1000) + " seconds");
-                    
-                    // If significant time has passed, update foreground duration and notify
-                    if (fgTime > 60000) { // 1 minute
-                        info.foregroundDuration += fgTime;
-                        info.lastForegroundTime = now; // Reset the start time
-                        updatedApps.put(info.packageName, info);
-                    }
+            // Apps that left the foreground since the last check, including across midnight
+            for (int i = 0; i < appUsageInfo.size(); i++) {
+                int id = appUsageInfo.keyAt(i);
+                AppUsageInfo info = appUsageInfo.valueAt(i);
+                if (info.isInForeground && !engine.isAppOpen(id)) {
+                    info.isInForeground = false;
+                    Long lastUsed = snapshot.getLastUsed().get(info.packageName);
+                    info.lastBackgroundTime = lastUsed != null ? lastUsed : now;
+                    Long fgTime = snapshot.getAppTimes().get(info.packageName);
+                    info.foregroundDuration = fgTime != null ? fgTime : 0;
+                    updatedApps.put(id, info);
+                    Log.d(TAG, info.packageName + " moved to background after "
+                        + ((info.lastBackgroundTime - info.lastForegroundTime) / 1000) + " seconds");
                 }
             }
             
             // Send updates for changed apps
-            if (!updatedApps.isEmpty()) {
+            if (updatedApps.size() > 0) {
                 publishBackgroundUsageUpdates(updatedApps);
             }
             
         } catch (Exception e) {
             Log.e(TAG, "Error tracking background usage", e);
         } finally {
-            // Schedule next check
-            backgroundDetectionHandler.postDelayed(backgroundDetectionRunnable, BACKGROUND_DETECTION_INTERVAL);
+            // Schedule next check, unless the screen went off meanwhile
+            if (ScreenStateCoordinator.getInstance(getContext()).isInteractive()) {
+                backgroundDetectionHandler.postDelayed(backgroundDetectionRunnable, BACKGROUND_DETECTION_INTERVAL);
+            }
         }
     }
     
     /**
      * Publish background usage updates
      */
-    private void publishBackgroundUsageUpdates(Map<String, AppUsageInfo> updatedApps) {
+    private void publishBackgroundUsageUpdates(SparseArray<AppUsageInfo> updatedApps) {
         try {
             // Create JSON array of updated apps
             JSONArray appsArray = new JSONArray();
-            for (AppUsageInfo info : updatedApps.values()) {
-                appsArray.put(info.toJson());
+            for (int i = 0; i < updatedApps.size(); i++) {
+                appsArray.put(updatedApps.valueAt(i).toJson());
             }
             
-            // Create update object
+            // Create update object, only the apps that changed in this check
             JSONObject updateData = new JSONObject();
             updateData.put("type", "background_usage");
+            updateData.put("seq", backgroundUsageChannel.nextSequence());
             updateData.put("timestamp", System.currentTimeMillis());
             updateData.put("apps", appsArray);
             
@@ -833,29 +916,132 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Publish usage update to all listeners
+     * Publish usage update to all listeners.
+     * Listeners only receive the fields and per-app totals that changed since the
+     * previous push, tagged with a sequence number; on a gap they call resyncUsage.
+     * Each update takes exactly one sequence number, shared by the delta and the
+     * system-wide snapshot of the same update. If nothing changed no number is
+     * taken and the snapshot carries the sequence of the state it matches.
      */
     private void publishUsageUpdate(JSONObject data) {
         try {
+            // Work out what changed since the last push
+            Map<String, Object> fields = new HashMap<>();
+            Iterator<String> keys = data.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!"timestamp".equals(key) && !"isImportant".equals(key) && !"seq".equals(key)) {
+                    fields.put(key, data.get(key));
+                }
+            }
+            Map<String, Object> apps = getTodayAppMinutes();
+            List<String> removedApps = new ArrayList<>();
+            Map<String, Object> changedFields;
+            Map<String, Object> changedApps;
+            boolean changed;
+            long seq;
+            // Diff and numbering in one step, so concurrent updates can't be numbered out of order
+            synchronized (usageUpdateChannel) {
+                changedFields = usageUpdateChannel.diff("fields", fields, null);
+                changedApps = usageUpdateChannel.diff("apps", apps, removedApps);
+                changed = !changedFields.isEmpty() || !changedApps.isEmpty() || !removedApps.isEmpty();
+                seq = changed ? usageUpdateChannel.nextSequence() : usageUpdateChannel.getSequence();
+            }
+            
             // Broadcast only important updates system-wide
-            boolean isImportant = data.optBoolean("isImportant", false);
-            if (isImportant) {
+            if (data.optBoolean("isImportant", false)) {
+                data.put("seq", seq);
                 Intent broadcastIntent = new Intent(ACTION_USAGE_UPDATE);
                 broadcastIntent.putExtra("usageData", data.toString());
                 getContext().sendBroadcast(broadcastIntent);
             }
             
+            if (!changed) {
+                Log.d(TAG, "Nothing changed, skipping usage update");
+                return;
+            }
+            
+            JSONObject delta = new JSONObject(changedFields);
+            delta.put("type", "delta");
+            delta.put("seq", seq);
+            delta.put("timestamp", System.currentTimeMillis());
+            delta.put("apps", new JSONObject(changedApps));
+            if (!removedApps.isEmpty()) {
+                delta.put("removedApps", new JSONArray(removedApps));
+            }
+            
             // Always notify Capacitor
             JSObject jsData = new JSObject();
-            jsData.put("data", data.toString());
+            jsData.put("data", delta.toString());
             notifyListeners("appUsageUpdate", jsData);
             
-            Log.d(TAG, "Published usage update: " + (isImportant ? "important" : "regular"));
+            Log.d(TAG, String.format("Published usage update %d: %d fields, %d apps changed",
+                seq, changedFields.size(), changedApps.size()));
         } catch (Exception e) {
             Log.e(TAG, "Error publishing usage update", e);
         }
     }
     
+    /**
+     * Today's per-app totals in minutes from the aggregation engine
+     */
+    private Map<String, Object> getTodayAppMinutes() {
+        Map<String, Object> apps = new HashMap<>();
+        UsageAggregationEngine.Snapshot snapshot = UsageAggregationEngine.getInstance(getContext()).refresh();
+        if (snapshot != null) {
+            for (Map.Entry<String, Long> entry : snapshot.getAppTimes().entrySet()) {
+                apps.put(entry.getKey(), entry.getValue() / 60000.0);
+            }
+        }
+        return apps;
+    }
+    
+    /**
+     * Get the full state behind the appUsageUpdate and backgroundUsage pushes.
+     * Called by listeners that detected a gap in the sequence numbers; the returned
+     * state becomes the baseline for the following deltas. "seq" is the sequence of
+     * the last delta already contained in the state (no new number is taken), so
+     * listeners apply only deltas with a higher sequence; "backgroundSeq" works the
+     * same way for backgroundUsage.
+     */
+    @PluginMethod
+    public void resyncUsage(PluginCall call) {
+        try {
+            SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("totalScreenTime", (double) getSafeScreenTime(prefs));
+            fields.put("screenTimeLimit", prefs.getLong(KEY_SCREEN_TIME_LIMIT, DEFAULT_SCREEN_TIME_LIMIT));
+            Map<String, Object> apps = getTodayAppMinutes();
+            
+            long seq;
+            synchronized (usageUpdateChannel) {
+                usageUpdateChannel.reset("fields", fields);
+                usageUpdateChannel.reset("apps", apps);
+                seq = usageUpdateChannel.getSequence();
+            }
+            
+            JSONArray backgroundApps = new JSONArray();
+            for (int i = 0; i < appUsageInfo.size(); i++) {
+                backgroundApps.put(appUsageInfo.valueAt(i).toJson());
+            }
+            
+            JSONObject result = new JSONObject(fields);
+            result.put("type", "full");
+            result.put("seq", seq);
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("apps", new JSONObject(apps));
+            result.put("backgroundSeq", backgroundUsageChannel.getSequence());
+            result.put("backgroundApps", backgroundApps);
+            
+            JSObject jsResult = new JSObject();
+            jsResult.put("data", result.toString());
+            call.resolve(jsResult);
+        } catch (Exception e) {
+            Log.e(TAG, "Error resyncing usage", e);
+            call.reject("Failed to resync usage: " + e.getMessage());
+        }
+    }
+    
     /**
      * Get background usage data for apps
      */
@@ -865,8 +1051,8 @@ public class AppUsageTracker extends Plugin {
             JSONObject result = new JSONObject();
             JSONArray appsArray = new JSONArray();
             
-            for (AppUsageInfo info : appUsageInfo.values()) {
-                appsArray.put(info.toJson());
+            for (int i = 0; i < appUsageInfo.size(); i++) {
+                appsArray.put(appUsageInfo.valueAt(i).toJson());
             }
             
             result.put("apps", appsArray);
@@ -904,83 +1090,39 @@ public class AppUsageTracker extends Plugin {
             backgroundExecutor.execute(() -> {
                 try {
                     // Default time range: start of day to now
-                    long startTime = getStartOfDay();
-                    long endTime = System.currentTimeMillis();
-                    
-                    // Parse options from the call data
-                    JSObject options = call.getData();
-                    boolean includeIcons = true;
-                    double minTimeThreshold = 0.0; // in minutes
-                    Set<String> filterPackages = new HashSet<>();
-                    boolean isIncludeFilter = false;
-                    
-                    if (options != null) {
-                        // Time range options
-                        if (options.has("startTime")) {
-                            startTime = options.getLong("startTime");
-                        }
-                        if (options.has("endTime")) {
-                            endTime = options.getLong("endTime");
-                        }
-                        
-                        // Icon option to reduce payload size if needed
-                        if (options.has("includeIcons")) {
-                            includeIcons = options.getBoolean("includeIcons");
-                        }
-                        
-                        // Time threshold to filter out briefly used apps
-                        if (options.has("minTimeThreshold")) {
-                            minTimeThreshold = options.getDouble("minTimeThreshold");
-                        }
-                        
-                        // Handle package filtering
-                        if (options.has("filterPackages") && options.has("filterType")) {
-                            try {
-                                JSONArray filterArray = new JSONArray(options.getString("filterPackages", "[]"));
-                                if (filterArray != null) {
-                                    for (int i = 0; i < filterArray.length(); i++) {
-                                        filterPackages.add(filterArray.getString(i));
-                                    }
-                                }
-                                
-                                String filterType = options.getString("filterType", "exclude");
-                                isIncludeFilter = "include".equalsIgnoreCase(filterType);
-                                
-                                Log.d(TAG, String.format("Using %s filter for %d packages", 
-                                    isIncludeFilter ? "include" : "exclude", filterPackages.size()));
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error parsing filter options", e);
-                            }
-                        }
-                    }
+                    UsageQuery query = UsageQuery.fromOptions(call.getData(), getStartOfDay(), System.currentTimeMillis());
+                    long startTime = query.startTime;
+                    long endTime = query.endTime;
                     
                     Log.d(TAG, String.format("Querying app usage from %s to %s", 
                         new Date(startTime).toString(), new Date(endTime).toString()));
                     
-                    final boolean finalIncludeIcons = includeIcons;
-                    final double finalMinTimeThreshold = minTimeThreshold;
-                    final Set<String> finalFilterPackages = filterPackages;
-                    final boolean finalIsIncludeFilter = isIncludeFilter;
-                    
-                    // Use queryUsageStats with try-catch for API compatibility
-                    List<UsageStats> stats;
-                    try {
-                        stats = usageStatsManager.queryUsageStats(
-                            UsageStatsManager.INTERVAL_DAILY, startTime, endTime
-                        );
-                        
-                        if (stats == null || stats.isEmpty()) {
-                            // Try with INTERVAL_BEST if daily doesn't work
-                            stats = usageStatsManager.queryUsageStats(
-                                UsageStatsManager.INTERVAL_BEST, startTime, endTime
-                            );
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error querying usage stats", e);
-                        stats = new ArrayList<>();
+                    // Serve repeated queries from the cache while no new events have arrived
+                    UsageAggregationEngine engine = UsageAggregationEngine.getInstance(getContext());
+                    long queryTime = System.currentTimeMillis();
+                    boolean live = endTime > getStartOfDay();
+                    if (live) {
+                        engine.refresh();
+                    }
+                    long watermark = live ? engine.getWatermark() : 0;
+                    String cacheKey = query.getCacheKey(live, queryTime);
+                    String cachedResult = usageQueryCache.get(cacheKey, watermark, queryTime);
+                    if (cachedResult != null) {
+                        Log.d(TAG, "Serving app usage data from cache");
+                        JSObject jsResult = new JSObject();
+                        jsResult.put("data", cachedResult);
+                        mainHandler.post(() -> call.resolve(jsResult));
+                        return;
                     }
                     
-                    if (stats == null || stats.isEmpty()) {
+                    // Finished days are read from the history store, only partial days and today hit the system
+                    Map<String, Long> appTimes = new HashMap<>();
+                    Map<String, Long> lastUsedTimes = new HashMap<>();
+                    long[] screenTime = new long[1];
+                    boolean available = engine.aggregateHistoryRange(startTime, endTime, appTimes, lastUsedTimes,
+                        screenTime);
+                    
+                    if (!available && appTimes.isEmpty()) {
                         Log.e(TAG, "Usage stats query returned null or empty");
                         mainHandler.post(() -> {
                             call.reject("Failed to get usage stats, possibly due to permission issues");
@@ -988,126 +1130,40 @@ public class AppUsageTracker extends Plugin {
                         return;
                     }
                     
-                    // Process stats and create response
-                    JSONObject result = new JSONObject();
-                    JSONArray appsArray = new JSONArray();
-                    long totalScreenTime = 0;
-                    
-                    // Pre-calculate package names to skip (only our own app)
-                    String ourPackageName = getContext().getPackageName();
-                    
-                    // Use hash map for better performance with larger datasets
-                    Map<String, JSONObject> appDataMap = new HashMap<>();
+                    // Stream the response straight into the reusable buffer
+                    JsonWriter json = usageJsonWriter.begin();
+                    json.beginObject();
+                    json.name("apps").beginArray();
                     
-                    // Process all stats first
-                    for (UsageStats stat : stats) {
-                        String packageName = stat.getPackageName();
-                        
-                        // First filter: Skip our own app
-                        if (packageName.equals(ourPackageName)) {
-                            continue;
-                        }
-                        
-                        // Second filter: Check against user-provided filter list
-                        if (!finalFilterPackages.isEmpty()) {
-                            boolean inFilterList = finalFilterPackages.contains(packageName);
-                            if ((finalIsIncludeFilter && !inFilterList) || (!finalIsIncludeFilter && inFilterList)) {
-                                continue;
-                            }
-                        }
-                        
-                        // Third filter: Skip most system apps but keep browsers and email
-                        if (isSystemApp(getContext(), packageName)) {
-                            continue;
-                        }
+                    for (Map.Entry<String, Long> entry : appTimes.entrySet()) {
+                        String packageName = entry.getKey();
+                        long timeInForeground = entry.getValue();
                         
-                        long timeInForeground = stat.getTotalTimeInForeground();
-                        double timeInMinutes = timeInForeground / 60000.0;
-                        
-                        // Skip apps that weren't used enough
-                        if (timeInMinutes < finalMinTimeThreshold) {
+                        // Apply the user-provided filter list and minimum time
+                        if (!query.accepts(packageName, timeInForeground)) {
                             continue;
                         }
                         
-                        if (timeInForeground > 0) {
-                            totalScreenTime += timeInForeground;
-                            
-                            try {
-                                String appName = getAppName(packageName);
-                                String category = getCategoryForApp(appName);
-                                
-                                JSONObject appData = new JSONObject();
-                                appData.put("name", appName);
-                                appData.put("packageName", packageName);
-                                appData.put("time", timeInMinutes);
-                                appData.put("lastUsed", stat.getLastTimeUsed());
-                                appData.put("category", category);
-                                
-                                // Only get icons if requested (can save bandwidth)
-                                if (finalIncludeIcons) {
-                                    try {
-                                        // Try to get icon with better error handling
-                                        String iconBase64 = getAppIconBase64(packageName);
-                                        if (iconBase64 != null && !iconBase64.isEmpty()) {
-                                            appData.put("icon", iconBase64);
-                                            Log.d(TAG, "Successfully retrieved icon for " + packageName + " from events");
-                                        } else {
-                                            // Use default placeholder if we couldn't get the icon
-                                            appData.put("icon", "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAJAAAACQBAMAAAAVaP+LAAAAHlBMVEX///8AAABSUlL09PSjo6M7OzshISGDg4O3t7dpaWmZfZ3LAAABzUlEQVRo3u3aS27kIBTG8XAMS2KP7Ygu+yTsf0UjRVGUDlWBn47a/6+EeHwfsK/NbbmzrjsoQIAAAQIECBAgQIAAAQIECBAgQIAAAfoIUDf3g/Ufo7s78vBoXOD0fc4GptfG2eDQmIfD2aB8bczBEVHV+Dna5XfRP44Zj2I52CMuahsrR7usNl6O1q02Xo6/q42Xg9eFOKKXg8cXiBzx5UD22NGObk8HmR072lF/gTNyNDrHjXXQCQ4yO3Z2EJ3iILNjZgeNrSsctOioo6gTHDPqaGeHDwf9rCNNB7dbnYfD0UHbHfSM59CjjtY7+HVoWh7x4LscPKOjzg6SOmjb9oLaF6jt4DnqaJODxA5a7SDxPLTSUeUOOm/bL9C27Q9o2/YHtG3/B2rb/oa2bbMj1kFYB0sd0Q4SO6IdJHZEO0jqCHeQ1BHtoA9ylNTRxDpI6hhiHTTZUcUOmuwIdhDrIKmDWAdJHcQ6SOoYYx0kdTSxDpI6hlgHzXZUsYPmOIIdxDpI6iDWQVIHsQ6SOsZYB0kdTayDpI4h1kF3+XlsYB0kdRDrIKmDpA5iHSR1EBvWpA5iQ5TUQUIHCR0kdBjHvwAAAP//m1pNlCv43RMAAAAASUVORK5CYII=");
-                                            Log.d(TAG, "Using placeholder icon for " + packageName + " from events");
-                                        }
-                                    } catch (Exception e) {
-                                        // Use a fallback placeholder on error
-                                        appData.put("icon", "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAJAAAACQBAMAAAAVaP+LAAAAHlBMVEX///8AAABSUlL09PSjo6M7OzshISGDg4O3t7dpaWmZfZ3LAAABzUlEQVRo3u3aS27kIBTG8XAMS2KP7Ygu+yTsf0UjRVGUDlWBn47a/6+EeHwfsK/NbbmzrjsoQIAAAQIECBAgQIAAAQIECBAgQIAAAfoIUDf3g/Ufo7s78vBoXOD0fc4GptfG2eDQmIfD2aB8bczBEVHV+Dna5XfRP44Zj2I52CMuahsrR7usNl6O1q02Xo6/q42Xg9eFOKKXg8cXiBzx5UD22NGObk8HmR072lF/gTNyNDrHjXXQCQ4yO3Z2EJ3iILNjZgeNrSsctOioo6gTHDPqaGeHDwf9rCNNB7dbnYfD0UHbHfSM59CjjtY7+HVoWh7x4LscPKOjzg6SOmjb9oLaF6jt4DnqaJODxA5a7SDxPLTSUeUOOm/bL9C27Q9o2/YHtG3/B2rb/oa2bbMj1kFYB0sd0Q4SO6IdJHZEO0jqCHeQ1BHtoA9ylNTRxDpI6hhiHTTZUcUOmuwIdhDrIKmDWAdJHcQ6SOoYYx0kdTSxDpI6hlgHzXZUsYPmOIIdxDpI6iDWQVIHsQ6SOsZYB0kdTayDpI4h1kF3+XlsYB0kdRDrIKmDpA5iHSR1EBvWpA5iQ5TUQUIHCR0kdBjHvwAAAP//m1pNlCv43RMAAAAASUVORK5CYII=");
-                                        Log.e(TAG, "Error retrieving icon for " + packageName + " from events: " + e.getMessage());
-                                    }
-                                } else {
-                                    appData.put("icon", "");
-                                }
-                                
-                                appsArray.put(appData);
-                                appDataMap.put(packageName, appData);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error processing app " + packageName, e);
-                            }
-                        }
+                        Long lastUsed = lastUsedTimes.get(packageName);
+                        writeAppEntry(json, packageName, timeInForeground, lastUsed != null ? lastUsed : 0,
+                            query.includeIcons);
                     }
+                    json.endArray();
                     
-                    // If we have insufficient data from UsageStats, try querying events for more accuracy
-                    if (totalScreenTime == 0 || appDataMap.isEmpty()) {
-                        try {
-                            UsageEvents events = usageStatsManager.queryEvents(startTime, endTime);
-                            if (events != null) {
-                                collectDataFromEvents(events, appDataMap, finalIncludeIcons, finalMinTimeThreshold, 
-                                    finalFilterPackages, finalIsIncludeFilter, ourPackageName);
-                                
-                                // Recalculate total time after events processing
-                                totalScreenTime = 0;
-                                for (JSONObject appData : appDataMap.values()) {
-                                    totalScreenTime += (long)(appData.getDouble("time") * 60000);
-                                }
-                                
-                                // Rebuild the array with updated data
-                                appsArray = new JSONArray();
-                                for (JSONObject appData : appDataMap.values()) {
-                                    appsArray.put(appData);
-                                }
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error querying events", e);
-                        }
-                    }
+                    // Overlapping apps (split-screen, picture-in-picture) count once
+                    json.name("totalScreenTime").value(query.screenTime(appTimes, screenTime[0]) / 60000.0);
+                    json.name("timestamp").value(System.currentTimeMillis());
+                    json.name("timeRange").beginObject()
+                        .name("startTime").value(startTime)
+                        .name("endTime").value(endTime)
+                        .endObject();
+                    json.endObject();
                     
-                    result.put("apps", appsArray);
-                    result.put("totalScreenTime", totalScreenTime / 60000.0);
-                    result.put("timestamp", System.currentTimeMillis());
-                    result.put("timeRange", new JSONObject()
-                        .put("startTime", startTime)
-                        .put("endTime", endTime));
+                    String resultString = usageJsonWriter.finish(json);
+                    usageQueryCache.put(cacheKey, resultString, watermark, queryTime, live);
                     
-                    // Convert JSONObject to JSObject before resolving
                     JSObject jsResult = new JSObject();
-                    jsResult.put("data", result.toString());
+                    jsResult.put("data", resultString);
                     
                     mainHandler.post(() -> call.resolve(jsResult));
                 } catch (Exception e) {
@@ -1122,118 +1178,513 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Helper method to collect app usage data from UsageEvents
-     * This can be more accurate than UsageStats in some cases
+     * Get app usage data one page at a time, sorted by time (most used first).
+     * Names, categories and icons are only resolved for the apps on the page.
+     * 
+     * @param call Capacitor plugin call with the getAppUsageData options plus:
+     *             - pageSize: number of apps per page (default: 10)
+     *             - cursor: nextCursor of a previous page; the other options are ignored when set
+     *             - pushRemaining: push the remaining pages as "appUsageChunk" events (default: false)
      */
-    private void collectDataFromEvents(UsageEvents events, Map<String, JSONObject> appDataMap, 
-            boolean includeIcons, double minTimeThreshold, Set<String> filterPackages, 
-            boolean isIncludeFilter, String ourPackageName) throws JSONException {
-        
-        UsageEvents.Event event = new UsageEvents.Event();
-        Map<String, Long> lastEventTimeMap = new HashMap<>();
-        Map<String, Double> appTimeMap = new HashMap<>();
-        
-        while (events.hasNextEvent()) {
-            events.getNextEvent(event);
-            String packageName = event.getPackageName();
-            
-            // Skip our own app
-            if (packageName.equals(ourPackageName)) {
-                continue;
+    @PluginMethod
+    public void getAppUsagePage(PluginCall call) {
+        try {
+            if (context == null || usageStatsManager == null || mainHandler == null) {
+                Log.e(TAG, "Required components not initialized in getAppUsagePage");
+                call.reject("App usage tracking not properly initialized");
+                return;
             }
             
-            // Apply filters
-            if (!filterPackages.isEmpty()) {
-                boolean inFilterList = filterPackages.contains(packageName);
-                if ((isIncludeFilter && !inFilterList) || (!isIncludeFilter && inFilterList)) {
-                    continue;
+            final String cursor = call.getString("cursor");
+            final int pageSize = Math.max(1, call.getInt("pageSize", DEFAULT_PAGE_SIZE));
+            final boolean pushRemaining = call.getBoolean("pushRemaining", false);
+            
+            backgroundExecutor.execute(() -> {
+                try {
+                    String sessionId;
+                    int offset;
+                    RankedUsage ranking;
+                    
+                    if (cursor != null) {
+                        int separator = cursor.lastIndexOf(':');
+                        sessionId = separator > 0 ? cursor.substring(0, separator) : cursor;
+                        offset = separator > 0 ? Integer.parseInt(cursor.substring(separator + 1)) : 0;
+                        ranking = usagePageSessions.get(sessionId);
+                        if (ranking == null) {
+                            mainHandler.post(() -> call.reject("Cursor expired, request the first page again"));
+                            return;
+                        }
+                    } else {
+                        UsageQuery query = UsageQuery.fromOptions(call.getData(), getStartOfDay(), System.currentTimeMillis());
+                        Map<String, Long> appTimes = new HashMap<>();
+                        Map<String, Long> lastUsedTimes = new HashMap<>();
+                        long[] screenTime = new long[1];
+                        UsageAggregationEngine.getInstance(getContext())
+                            .aggregateHistoryRange(query.startTime, query.endTime, appTimes, lastUsedTimes, screenTime);
+                        
+                        ranking = new RankedUsage(query, query.rank(appTimes), lastUsedTimes,
+                            query.screenTime(appTimes, screenTime[0]));
+                        sessionId = String.valueOf(++pageSessionCounter);
+                        offset = 0;
+                        usagePageSessions.put(sessionId, ranking);
+                    }
+                    
+                    JSObject jsResult = new JSObject();
+                    jsResult.put("data", writeUsagePage(sessionId, ranking, offset, pageSize));
+                    mainHandler.post(() -> call.resolve(jsResult));
+                    
+                    if (pushRemaining) {
+                        pushUsageChunk(sessionId, ranking, offset + pageSize, pageSize);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error getting app usage page", e);
+                    mainHandler.post(() -> call.reject("Error getting app usage page: " + e.getMessage()));
                 }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error in getAppUsagePage", e);
+            call.reject("Error in getAppUsagePage: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get the N most used apps of a range. The top N are picked from the raw
+     * totals first; names, categories and icons are only resolved for those.
+     * 
+     * @param call Capacitor plugin call with the getAppUsageData options plus:
+     *             - n: number of apps to return (default: 5)
+     */
+    @PluginMethod
+    public void getTopApps(PluginCall call) {
+        try {
+            if (context == null || usageStatsManager == null || mainHandler == null) {
+                Log.e(TAG, "Required components not initialized in getTopApps");
+                call.reject("App usage tracking not properly initialized");
+                return;
             }
             
-            // Skip system apps but keep browsers and email
-            if (isSystemApp(getContext(), packageName)) {
-                continue;
+            final int n = call.getInt("n", DEFAULT_TOP_APPS);
+            if (n <= 0 || n > MAX_TOP_APPS) {
+                call.reject("n must be between 1 and " + MAX_TOP_APPS);
+                return;
             }
             
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                lastEventTimeMap.put(packageName, event.getTimeStamp());
-            } else if (event.getEventType() == UsageEvents.Event.MOVE_TO_BACKGROUND) {
-                Long lastTime = lastEventTimeMap.get(packageName);
-                if (lastTime != null) {
-                    double timeSpentMinutes = (event.getTimeStamp() - lastTime) / 60000.0;
-                    Double currentTime = appTimeMap.getOrDefault(packageName, 0.0);
-                    appTimeMap.put(packageName, currentTime + timeSpentMinutes);
-                    lastEventTimeMap.remove(packageName);
+            backgroundExecutor.execute(() -> {
+                try {
+                    UsageQuery query = UsageQuery.fromOptions(call.getData(), getStartOfDay(), System.currentTimeMillis());
+                    Map<String, Long> appTimes = new HashMap<>();
+                    Map<String, Long> lastUsedTimes = new HashMap<>();
+                    long[] screenTime = new long[1];
+                    UsageAggregationEngine.getInstance(getContext())
+                        .aggregateHistoryRange(query.startTime, query.endTime, appTimes, lastUsedTimes, screenTime);
+                    
+                    List<Map.Entry<String, Long>> topApps = query.top(appTimes, n);
+                    
+                    JsonWriter json = usageJsonWriter.begin();
+                    json.beginObject();
+                    json.name("apps").beginArray();
+                    for (Map.Entry<String, Long> app : topApps) {
+                        Long lastUsed = lastUsedTimes.get(app.getKey());
+                        writeAppEntry(json, app.getKey(), app.getValue(), lastUsed != null ? lastUsed : 0,
+                            query.includeIcons);
+                    }
+                    json.endArray();
+                    json.name("totalScreenTime").value(query.screenTime(appTimes, screenTime[0]) / 60000.0);
+                    json.name("timestamp").value(System.currentTimeMillis());
+                    json.name("timeRange").beginObject()
+                        .name("startTime").value(query.startTime)
+                        .name("endTime").value(query.endTime)
+                        .endObject();
+                    json.endObject();
+                    
+                    JSObject jsResult = new JSObject();
+                    jsResult.put("data", usageJsonWriter.finish(json));
+                    mainHandler.post(() -> call.resolve(jsResult));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error getting top apps", e);
+                    mainHandler.post(() -> call.reject("Error getting top apps: " + e.getMessage()));
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error in getTopApps", e);
+            call.reject("Error in getTopApps: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Set a daily limit in minutes for one app: {packageName, minutes}
+     */
+    @PluginMethod
+    public void setAppLimit(PluginCall call) {
+        String packageName = call.getString("packageName");
+        Long minutes = call.getLong("minutes");
+        if (packageName == null || minutes == null || minutes <= 0) {
+            call.reject("packageName and a positive minutes value are required");
+            return;
+        }
+        
+        backgroundExecutor.execute(() -> {
+            try {
+                AppLimitTable.getInstance(getContext()).setAppLimit(packageName, minutes);
+                mainHandler.post(() -> call.resolve());
+            } catch (Exception e) {
+                Log.e(TAG, "Error setting app limit", e);
+                mainHandler.post(() -> call.reject("Error setting app limit: " + e.getMessage()));
+            }
+        });
+    }
+    
+    @PluginMethod
+    public void removeAppLimit(PluginCall call) {
+        String packageName = call.getString("packageName");
+        if (packageName == null) {
+            call.reject("packageName is required");
+            return;
+        }
+        
+        backgroundExecutor.execute(() -> {
+            try {
+                JSObject ret = new JSObject();
+                ret.put("removed", AppLimitTable.getInstance(getContext()).removeAppLimit(packageName));
+                mainHandler.post(() -> call.resolve(ret));
+            } catch (Exception e) {
+                Log.e(TAG, "Error removing app limit", e);
+                mainHandler.post(() -> call.reject("Error removing app limit: " + e.getMessage()));
+            }
+        });
+    }
+    
+    /**
+     * Set a daily limit in minutes shared by a group of apps: {name, minutes, packages}
+     */
+    @PluginMethod
+    public void setGroupLimit(PluginCall call) {
+        String name = call.getString("name");
+        Long minutes = call.getLong("minutes");
+        JSArray packages = call.getArray("packages");
+        if (name == null || minutes == null || minutes <= 0 || packages == null) {
+            call.reject("name, packages and a positive minutes value are required");
+            return;
+        }
+        
+        backgroundExecutor.execute(() -> {
+            try {
+                List<String> packageNames = new ArrayList<>();
+                for (int i = 0; i < packages.length(); i++) {
+                    packageNames.add(packages.getString(i));
                 }
+                AppLimitTable.getInstance(getContext()).setGroupLimit(name, minutes, packageNames);
+                mainHandler.post(() -> call.resolve());
+            } catch (Exception e) {
+                Log.e(TAG, "Error setting group limit", e);
+                mainHandler.post(() -> call.reject("Error setting group limit: " + e.getMessage()));
             }
+        });
+    }
+    
+    @PluginMethod
+    public void removeGroupLimit(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null) {
+            call.reject("name is required");
+            return;
         }
         
-        // Handle apps still in foreground at query end time
-        long endTime = System.currentTimeMillis();
-        for (Map.Entry<String, Long> entry : lastEventTimeMap.entrySet()) {
-            String packageName = entry.getKey();
-            long lastTime = entry.getValue();
-            double timeSpentMinutes = (endTime - lastTime) / 60000.0;
-            Double currentTime = appTimeMap.getOrDefault(packageName, 0.0);
-            appTimeMap.put(packageName, currentTime + timeSpentMinutes);
+        backgroundExecutor.execute(() -> {
+            try {
+                JSObject ret = new JSObject();
+                ret.put("removed", AppLimitTable.getInstance(getContext()).removeGroupLimit(name));
+                mainHandler.post(() -> call.resolve(ret));
+            } catch (Exception e) {
+                Log.e(TAG, "Error removing group limit", e);
+                mainHandler.post(() -> call.reject("Error removing group limit: " + e.getMessage()));
+            }
+        });
+    }
+    
+    /**
+     * All per-app and group limits with today's usage in minutes
+     */
+    @PluginMethod
+    public void getAppLimits(PluginCall call) {
+        backgroundExecutor.execute(() -> {
+            try {
+                JSONObject limits = AppLimitTable.getInstance(getContext())
+                    .toJson(UsageAggregationEngine.getInstance(getContext()));
+                JSObject ret = JSObject.fromJSONObject(limits);
+                mainHandler.post(() -> call.resolve(ret));
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting app limits", e);
+                mainHandler.post(() -> call.reject("Error getting app limits: " + e.getMessage()));
+            }
+        });
+    }
+    
+    /**
+     * Size and hit/miss/eviction counters of the icon cache
+     */
+    @PluginMethod
+    public void getIconCacheStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(IconCache.getInstance(getContext()).getStats()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting icon cache stats", e);
+            call.reject("Error getting icon cache stats: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Pack the icons of a set of packages into one atlas image.
+     * Options: packages (array of package names, at most MAX_ATLAS_ICONS).
+     * The packages are laid out sorted by name, so the same set always maps
+     * to the same atlas; it is cached by a key over the names and icon hashes.
+     * Resolves with the atlas URL, its key, the grid geometry and the cell of every package.
+     */
+    @PluginMethod
+    public void getIconAtlas(PluginCall call) {
+        JSArray packageArray = call.getArray("packages");
+        if (packageArray == null || packageArray.length() == 0) {
+            // An empty atlas would be a zero-sized bitmap, which can't be created
+            call.reject("packages must contain at least one package");
+            return;
         }
         
-        // Add events data to the result map
-        for (Map.Entry<String, Double> entry : appTimeMap.entrySet()) {
-            String packageName = entry.getKey();
-            double timeInMinutes = entry.getValue();
-            
-            // Skip apps that weren't used enough
-            if (timeInMinutes < minTimeThreshold) {
-                continue;
+        backgroundExecutor.execute(() -> {
+            try {
+                // Canonical order: sorted and without duplicates
+                TreeSet<String> packageSet = new TreeSet<>(packageArray.<String>toList());
+                if (packageSet.size() > SettingsConstants.MAX_ATLAS_ICONS) {
+                    mainHandler.post(() -> call.reject("At most " + SettingsConstants.MAX_ATLAS_ICONS
+                        + " packages per atlas"));
+                    return;
+                }
+                String[] packageNames = packageSet.toArray(new String[0]);
+                
+                // Icon files are named by content hash, so the key changes whenever an icon does
+                File[] iconFiles = new File[packageNames.length];
+                StringBuilder keySource = new StringBuilder();
+                for (int i = 0; i < packageNames.length; i++) {
+                    iconFiles[i] = getAppIconFile(packageNames[i]);
+                    keySource.append(packageNames[i]).append('=')
+                        .append(iconFiles[i] != null ? iconFiles[i].getName() : "").append('\n');
+                }
+                String key = AppMetadataCatalog.contentHash(keySource.toString().getBytes(StandardCharsets.UTF_8));
+                
+                File atlasFile = IconAtlas.getOrBuild(getContext(), key, iconFiles, ICON_SIZE);
+                if (atlasFile == null) {
+                    mainHandler.post(() -> call.reject("Could not build icon atlas"));
+                    return;
+                }
+                
+                int columns = IconAtlas.getColumns(packageNames.length);
+                JSArray icons = new JSArray();
+                for (int i = 0; i < packageNames.length; i++) {
+                    JSObject icon = new JSObject();
+                    icon.put("packageName", packageNames[i]);
+                    icon.put("x", (i % columns) * ICON_SIZE);
+                    icon.put("y", (i / columns) * ICON_SIZE);
+                    icon.put("hasIcon", iconFiles[i] != null);
+                    icons.put(icon);
+                }
+                
+                JSObject ret = new JSObject();
+                ret.put("url", getLocalFileUrl(atlasFile));
+                ret.put("key", key);
+                ret.put("cellSize", ICON_SIZE);
+                ret.put("columns", columns);
+                ret.put("rows", (packageNames.length + columns - 1) / columns);
+                ret.put("icons", icons);
+                mainHandler.post(() -> call.resolve(ret));
+            } catch (Exception e) {
+                Log.e(TAG, "Error getting icon atlas", e);
+                mainHandler.post(() -> call.reject("Error getting icon atlas: " + e.getMessage()));
             }
-            
-            // Update existing app data or create new entry
-            JSONObject appData = appDataMap.get(packageName);
-            if (appData == null) {
+        });
+    }
+    
+    /**
+     * Queue the page at offset as an "appUsageChunk" event. Each chunk queues the
+     * next one, so other calls on the backgroundExecutor can run in between.
+     */
+    private void pushUsageChunk(String sessionId, RankedUsage ranking, int offset, int pageSize) {
+        if (offset >= ranking.apps.size()) {
+            return;
+        }
+        
+        backgroundExecutor.execute(() -> {
+            try {
+                JSObject chunk = new JSObject();
+                chunk.put("data", writeUsagePage(sessionId, ranking, offset, pageSize));
+                notifyListeners("appUsageChunk", chunk);
+                pushUsageChunk(sessionId, ranking, offset + pageSize, pageSize);
+            } catch (Exception e) {
+                Log.e(TAG, "Error pushing app usage chunk", e);
+            }
+        });
+    }
+    
+    private String writeUsagePage(String sessionId, RankedUsage ranking, int offset, int pageSize) throws IOException {
+        int end = Math.min(ranking.apps.size(), offset + pageSize);
+        boolean done = end >= ranking.apps.size();
+        
+        JsonWriter json = usageJsonWriter.begin();
+        json.beginObject();
+        json.name("apps").beginArray();
+        for (int i = offset; i < end; i++) {
+            Map.Entry<String, Long> app = ranking.apps.get(i);
+            Long lastUsed = ranking.lastUsed.get(app.getKey());
+            writeAppEntry(json, app.getKey(), app.getValue(), lastUsed != null ? lastUsed : 0,
+                ranking.query.includeIcons);
+        }
+        json.endArray();
+        
+        json.name("offset").value(offset);
+        json.name("totalApps").value(ranking.apps.size());
+        json.name("totalScreenTime").value(ranking.totalTime / 60000.0);
+        json.name("done").value(done);
+        if (done) {
+            json.name("nextCursor").nullValue();
+        } else {
+            json.name("nextCursor").value(sessionId + ":" + end);
+        }
+        json.name("timestamp").value(System.currentTimeMillis());
+        json.name("timeRange").beginObject()
+            .name("startTime").value(ranking.query.startTime)
+            .name("endTime").value(ranking.query.endTime)
+            .endObject();
+        json.endObject();
+        
+        return usageJsonWriter.finish(json);
+    }
+    
+    /**
+     * Get today's per-app usage for a range of hours from the hourly buckets
+     * kept by the aggregation engine, without a new UsageStatsManager query.
+     * @param call Plugin call with options:
+     *             - startHour: first hour of the range, 0-23 (default: 0)
+     *             - endHour: hour after the last one in the range, 1-24 (default: 24)
+     */
+    @PluginMethod
+    public void getHourlyUsage(PluginCall call) {
+        try {
+            final int startHour = call.getInt("startHour", 0);
+            final int endHour = call.getInt("endHour", UsageEventCursor.HOURS_PER_DAY);
+            if (startHour < 0 || endHour > UsageEventCursor.HOURS_PER_DAY || startHour >= endHour) {
+                call.reject("Invalid hour range: " + startHour + " - " + endHour);
+                return;
+            }
+
+            backgroundExecutor.execute(() -> {
                 try {
-                    String appName = getAppName(packageName);
-                    String category = getCategoryForApp(appName);
+                    UsageAggregationEngine.Snapshot snapshot = UsageAggregationEngine.getInstance(getContext()).refresh();
+                    if (snapshot == null) {
+                        mainHandler.post(() -> call.reject("No usage data available"));
+                        return;
+                    }
                     
-                    appData = new JSONObject();
-                    appData.put("name", appName);
-                    appData.put("packageName", packageName);
-                    appData.put("time", timeInMinutes);
-                    appData.put("lastUsed", System.currentTimeMillis());
-                    appData.put("category", category);
+                    JSONArray appsArray = new JSONArray();
+                    long[] hourTotals = new long[endHour - startHour];
+                    long totalScreenTime = 0;
                     
-                    if (includeIcons) {
-                        try {
-                            // Try to get icon with better error handling
-                            String iconBase64 = getAppIconBase64(packageName);
-                            if (iconBase64 != null && !iconBase64.isEmpty()) {
-                                appData.put("icon", iconBase64);
-                                Log.d(TAG, "Successfully retrieved icon for " + packageName + " from events");
-                            } else {
-                                // Use default placeholder if we couldn't get the icon
-                                appData.put("icon", "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAJAAAACQBAMAAAAVaP+LAAAAHlBMVEX///8AAABSUlL09PSjo6M7OzshISGDg4O3t7dpaWmZfZ3LAAABzUlEQVRo3u3aS27kIBTG8XAMS2KP7Ygu+yTsf0UjRVGUDlWBn47a/6+EeHwfsK/NbbmzrjsoQIAAAQIECBAgQIAAAQIECBAgQIAAAfoIUDf3g/Ufo7s78vBoXOD0fc4GptfG2eDQmIfD2aB8bczBEVHV+Dna5XfRP44Zj2I52CMuahsrR7usNl6O1q02Xo6/q42Xg9eFOKKXg8cXiBzx5UD22NGObk8HmR072lF/gTNyNDrHjXXQCQ4yO3Z2EJ3iILNjZgeNrSsctOioo6gTHDPqaGeHDwf9rCNNB7dbnYfD0UHbHfSM59CjjtY7+HVoWh7x4LscPKOjzg6SOmjb9oLaF6jt4DnqaJODxA5a7SDxPLTSUeUOOm/bL9C27Q9o2/YHtG3/B2rb/oa2bbMj1kFYB0sd0Q4SO6IdJHZEO0jqCHeQ1BHtoA9ylNTRxDpI6hhiHTTZUcUOmuwIdhDrIKmDWAdJHcQ6SOoYYx0kdTSxDpI6hlgHzXZUsYPmOIIdxDpI6iDWQVIHsQ6SOsZYB0kdTayDpI4h1kF3+XlsYB0kdRDrIKmDpA5iHSR1EBvWpA5iQ5TUQUIHCR0kdBjHvwAAAP//m1pNlCv43RMAAAAASUVORK5CYII=");
-                                Log.d(TAG, "Using placeholder icon for " + packageName + " from events");
-                            }
-                        } catch (Exception e) {
-                            // Use a fallback placeholder on error
-                            appData.put("icon", "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAJAAAACQBAMAAAAVaP+LAAAAHlBMVEX///8AAABSUlL09PSjo6M7OzshISGDg4O3t7dpaWmZfZ3LAAABzUlEQVRo3u3aS27kIBTG8XAMS2KP7Ygu+yTsf0UjRVGUDlWBn47a/6+EeHwfsK/NbbmzrjsoQIAAAQIECBAgQIAAAQIECBAgQIAAAfoIUDf3g/Ufo7s78vBoXOD0fc4GptfG2eDQmIfD2aB8bczBEVHV+Dna5XfRP44Zj2I52CMuahsrR7usNl6O1q02Xo6/q42Xg9eFOKKXg8cXiBzx5UD22NGObk8HmR072lF/gTNyNDrHjXXQCQ4yO3Z2EJ3iILNjZgeNrSsctOioo6gTHDPqaGeHDwf9rCNNB7dbnYfD0UHbHfSM59CjjtY7+HVoWh7x4LscPKOjzg6SOmjb9oLaF6jt4DnqaJODxA5a7SDxPLTSUeUOOm/bL9C27Q9o2/YHtG3/B2rb/oa2bbMj1kFYB0sd0Q4SO6IdJHZEO0jqCHeQ1BHtoA9ylNTRxDpI6hhiHTTZUcUOmuwIdhDrIKmDWAdJHcQ6SOoYYx0kdTSxDpI6hlgHzXZUsYPmOIIdxDpI6iDWQVIHsQ6SOsZYB0kdTayDpI4h1kF3+XlsYB0kdRDrIKmDpA5iHSR1EBvWpA5iQ5TUQUIHCR0kdBjHvwAAAP//m1pNlCv43RMAAAAASUVORK5CYII=");
-                            Log.e(TAG, "Error retrieving icon for " + packageName + " from events: " + e.getMessage());
+                    for (Map.Entry<String, long[]> entry : snapshot.getHourlyTimes().entrySet()) {
+                        String packageName = entry.getKey();
+                        long[] hours = entry.getValue();
+                        long appTime = snapshot.getTimeInHours(packageName, startHour, endHour);
+                        if (appTime <= 0) {
+                            continue;
                         }
-                    } else {
-                        appData.put("icon", "");
+                        
+                        JSONArray appHours = new JSONArray();
+                        for (int hour = startHour; hour < endHour; hour++) {
+                            appHours.put(hours[hour] / 60000.0);
+                            hourTotals[hour - startHour] += hours[hour];
+                        }
+                        totalScreenTime += appTime;
+                        
+                        JSONObject appData = new JSONObject();
+                        appData.put("name", getAppName(packageName));
+                        appData.put("packageName", packageName);
+                        appData.put("time", appTime / 60000.0);
+                        appData.put("hours", appHours);
+                        appsArray.put(appData);
                     }
                     
-                    appDataMap.put(packageName, appData);
+                    JSONArray totalsArray = new JSONArray();
+                    for (long hourTotal : hourTotals) {
+                        totalsArray.put(hourTotal / 60000.0);
+                    }
+                    
+                    JSONObject result = new JSONObject();
+                    result.put("apps", appsArray);
+                    result.put("hours", totalsArray);
+                    // The union is only known for the whole day, it caps the sum of the hours
+                    result.put("totalScreenTime", Math.min(totalScreenTime, snapshot.getTotalTimeMs()) / 60000.0);
+                    result.put("startHour", startHour);
+                    result.put("endHour", endHour);
+                    result.put("dayStart", snapshot.getDayStart());
+                    result.put("timestamp", snapshot.getTimestamp());
+                    
+                    JSObject jsResult = new JSObject();
+                    jsResult.put("data", result.toString());
+                    
+                    mainHandler.post(() -> call.resolve(jsResult));
                 } catch (Exception e) {
-                    Log.e(TAG, "Error processing app from events " + packageName, e);
-                }
-            } else {
-                // Use the maximum time between UsageStats and UsageEvents
-                double currentTime = appData.getDouble("time");
-                if (timeInMinutes > currentTime) {
-                    appData.put("time", timeInMinutes);
+                    Log.e(TAG, "Error getting hourly usage", e);
+                    mainHandler.post(() -> call.reject("Error getting hourly usage: " + e.getMessage()));
                 }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Error in getHourlyUsage", e);
+            call.reject("Error in getHourlyUsage: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Write one app entry of a usage response, resolving its name, category and icon
+     */
+    private void writeAppEntry(JsonWriter json, String packageName, long timeMs, long lastUsed,
+            boolean includeIcons) throws IOException {
+        String appName = getAppName(packageName);
+        String category = getAppCategory(packageName, appName);
+        String icon = getAppIconOrPlaceholder(packageName, includeIcons);
+        AppMetadataCatalog.Entry entry = includeIcons
+            ? AppMetadataCatalog.getInstance(getContext()).get(packageName)
+            : null;
+        
+        json.beginObject();
+        json.name("name").value(appName);
+        json.name("packageName").value(packageName);
+        json.name("time").value(timeMs / 60000.0);
+        json.name("lastUsed").value(lastUsed);
+        json.name("category").value(category);
+        json.name("icon").value(icon);
+        // Content hash and app version, for caching icons on the JS side
+        json.name("iconKey").value(entry != null ? entry.iconHash : "");
+        json.name("iconVersion").value(entry != null ? entry.versionCode : 0);
+        json.endObject();
+    }
+    
+    /**
+     * Get the local URL of the app icon, or a placeholder if it can't be loaded
+     */
+    private String getAppIconOrPlaceholder(String packageName, boolean includeIcons) {
+        // Only get icons if requested (can save bandwidth)
+        if (!includeIcons) {
+            return "";
+        }
+        
+        try {
+            String iconUrl = getAppIconUrl(packageName);
+            if (iconUrl != null) {
+                return iconUrl;
             }
+            // Use default placeholder if we couldn't get the icon
+            Log.d(TAG, "Using placeholder icon for " + packageName);
+            return PLACEHOLDER_ICON;
+        } catch (Exception e) {
+            // Use a fallback placeholder on error
+            Log.e(TAG, "Error retrieving icon for " + packageName + ": " + e.getMessage());
+            return PLACEHOLDER_ICON;
         }
     }
     
@@ -1477,53 +1928,14 @@ public class AppUsageTracker extends Plugin {
      */
     public static float calculateScreenTime(Context context) {
         try {
-            // Get start of day in user's local timezone
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.HOUR_OF_DAY, 0);
-            calendar.set(Calendar.MINUTE, 0);
-            calendar.set(Calendar.SECOND, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            long startTime = calendar.getTimeInMillis();
-            long endTime = System.currentTimeMillis();
-
-            Log.d(TAG, String.format("Calculating screen time from %s to %s", 
-                new Date(startTime).toString(), new Date(endTime).toString()));
-
-            UsageStatsManager usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
-            if (usageStatsManager == null) {
-                Log.e(TAG, "UsageStatsManager is null");
+            // Today's totals come from the shared aggregation engine
+            UsageAggregationEngine.Snapshot snapshot = UsageAggregationEngine.getInstance(context).refresh();
+            if (snapshot == null) {
+                Log.w(TAG, "No usage data available for today");
                 return getFallbackScreenTime(context);
             }
 
-            // Get all usage stats for today
-            List<UsageStats> stats = usageStatsManager.queryUsageStats(
-                UsageStatsManager.INTERVAL_DAILY, startTime, endTime);
-
-            if (stats == null || stats.isEmpty()) {
-                Log.w(TAG, "No usage stats available for today");
-                return getFallbackScreenTime(context);
-            }
-
-            float totalMinutes = 0;
-            String ourPackage = context.getPackageName();
-
-            // Calculate total time from UsageStats
-            for (UsageStats stat : stats) {
-                String packageName = stat.getPackageName();
-                
-                // Skip our own app and system apps (except common ones)
-                if (packageName.equals(ourPackage) || (isSystemApp(context, packageName) && !isCommonApp(packageName))) {
-                    continue;
-                }
-                
-                // Only count time if the app was used today
-                if (stat.getLastTimeUsed() >= startTime) {
-                    long timeInForeground = stat.getTotalTimeInForeground();
-                    if (timeInForeground > 0) {
-                        totalMinutes += timeInForeground / 60000.0f; // Convert to minutes
-                    }
-                }
-            }
+            float totalMinutes = snapshot.getTotalMinutes();
 
             Log.d(TAG, String.format("Calculated total screen time: %.2f minutes", totalMinutes));
 
@@ -1551,35 +1963,6 @@ public class AppUsageTracker extends Plugin {
         }
     }
 
-    private static boolean isCommonApp(String packageName) {
-        String lowerCase = packageName.toLowerCase();
-        return lowerCase.contains("browser") || 
-               lowerCase.contains("chrome") || 
-               lowerCase.contains("firefox") || 
-               lowerCase.contains("opera") || 
-               lowerCase.contains("edge") ||
-               lowerCase.contains("mail") || 
-               lowerCase.contains("gmail") || 
-               lowerCase.contains("outlook") || 
-               lowerCase.contains("k9") ||
-               lowerCase.contains("yahoo") ||
-               lowerCase.contains("maps") ||
-               lowerCase.contains("navigation") ||
-               lowerCase.contains("waze") ||
-               lowerCase.contains("google") ||
-               lowerCase.contains("youtube") ||
-               lowerCase.contains("play") ||
-               lowerCase.contains("drive") ||
-               lowerCase.contains("photos") ||
-               lowerCase.contains("calendar") ||
-               lowerCase.contains("contacts") ||
-               lowerCase.contains("camera") ||
-               lowerCase.contains("gallery") ||
-               lowerCase.contains("music") ||
-               lowerCase.contains("video") ||
-               lowerCase.contains("player");
-    }
-
     private static float getFallbackScreenTime(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         long lastUpdate = prefs.getLong(KEY_LAST_UPDATE, 0);
@@ -1662,28 +2045,27 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Check the current foreground app
+     * Check the current foreground app: of the apps the cursor has open, the one
+     * whose session started last
      */
     private void checkCurrentApp() {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || usageStatsManager == null) {
+        if (usageStatsManager == null) {
             return;
         }
         
-        long time = System.currentTimeMillis();
-        UsageEvents usageEvents = usageStatsManager.queryEvents(time - 10000, time);
-        
-        if (usageEvents == null) {
+        UsageAggregationEngine engine = UsageAggregationEngine.getInstance(getContext());
+        if (engine.refresh() == null) {
             return;
         }
         
-        UsageEvents.Event event = new UsageEvents.Event();
+        PackageDictionary dictionary = PackageDictionary.getInstance(getContext());
         String currentApp = null;
-        
-        while (usageEvents.hasNextEvent()) {
-            usageEvents.getNextEvent(event);
-            
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                currentApp = event.getPackageName();
+        long latestOpenSince = 0;
+        for (int id = 0; id < dictionary.size(); id++) {
+            long openSince = engine.getAppOpenSince(id);
+            if (openSince > latestOpenSince) {
+                latestOpenSince = openSince;
+                currentApp = dictionary.getPackageName(id);
             }
         }
         
@@ -1691,14 +2073,7 @@ public class AppUsageTracker extends Plugin {
             currentForegroundApp = currentApp;
             
             // Get app name
-            String appName = currentApp;
-            try {
-                PackageManager packageManager = getContext().getPackageManager();
-                ApplicationInfo appInfo = packageManager.getApplicationInfo(currentApp, PackageManager.GET_META_DATA);
-                appName = packageManager.getApplicationLabel(appInfo).toString();
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting app name", e);
-            }
+            String appName = getAppName(getContext(), currentApp);
             
             // Notify JavaScript
             final String finalAppName = appName;
@@ -1717,7 +2092,7 @@ public class AppUsageTracker extends Plugin {
     private JSONObject createAppUsageObject(String packageName) throws JSONException {
         JSONObject appUsage = new JSONObject();
         String appName = getAppName(packageName);
-        String category = getCategoryForApp(appName);
+        String category = getAppCategory(packageName, appName);
         String iconBase64 = getAppIconBase64(packageName);
         
         Log.d(TAG, "Creating app usage object for " + appName + 
@@ -1738,6 +2113,12 @@ public class AppUsageTracker extends Plugin {
      * Get the display name of an app from its package name
      */
     private String getAppName(String packageName) {
+        // Known apps are answered from the catalog without any PackageManager call
+        AppMetadataCatalog.Entry entry = AppMetadataCatalog.getInstance(getContext()).get(packageName);
+        if (entry != null) {
+            return entry.label;
+        }
+        
         PackageManager packageManager = getContext().getPackageManager();
         
         // First check if we have permission to access app info
@@ -1784,6 +2165,14 @@ public class AppUsageTracker extends Plugin {
         }
     }
 
+    /**
+     * Category of an app, from the catalog when it is installed
+     */
+    private String getAppCategory(String packageName, String appName) {
+        AppMetadataCatalog.Entry entry = AppMetadataCatalog.getInstance(getContext()).get(packageName);
+        return entry != null ? entry.category : AppRules.getInstance(getContext()).getCategoryForApp(appName);
+    }
+
     private String extractReadableName(String packageName) {
         String[] parts = packageName.split("\\.");
         if (parts.length > 0) {
@@ -1801,114 +2190,32 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Check if an app is a system app that should be excluded from tracking
+     * Check if an app is a system app that should be excluded from tracking.
+     * Hot paths should use PackageDictionary.isSystemApp, which memoizes this per id.
      */
     public static boolean isSystemApp(Context context, String packageName) {
         try {
             PackageManager packageManager = context.getPackageManager();
-            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-            
-            // Check if it's a system app
-            boolean isSystem = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-            
-            // Explicitly include common browsers, mail apps, and navigation apps even if they are system apps
-            if (isSystem) {
-                String appNameLower = packageName.toLowerCase();
-                if (appNameLower.contains("browser") || 
-                    appNameLower.contains("chrome") || 
-                    appNameLower.contains("firefox") || 
-                    appNameLower.contains("opera") || 
-                    appNameLower.contains("edge") ||
-                    appNameLower.contains("mail") || 
-                    appNameLower.contains("gmail") || 
-                    appNameLower.contains("outlook") || 
-                    appNameLower.contains("k9") ||
-                    appNameLower.contains("yahoo") ||
-                    appNameLower.contains("maps") || // Include Google Maps
-                    appNameLower.contains("navigation") || // Include other navigation apps
-                    appNameLower.contains("waze") || // Include Waze
-                    appNameLower.contains("google") || // Include other Google apps
-                    appNameLower.contains("youtube") || // Include YouTube
-                    appNameLower.contains("play") || // Include Google Play apps
-                    appNameLower.contains("drive") || // Include Google Drive
-                    appNameLower.contains("photos") || // Include Google Photos
-                    appNameLower.contains("calendar") || // Include Calendar apps
-                    appNameLower.contains("contacts") || // Include Contacts apps
-                    appNameLower.contains("camera") || // Include Camera apps
-                    appNameLower.contains("gallery") || // Include Gallery apps
-                    appNameLower.contains("music") || // Include Music apps
-                    appNameLower.contains("video") || // Include Video apps
-                    appNameLower.contains("player")) { // Include Media players
-                    // This is a commonly used app, include it in tracking
-                    return false;
-                }
-            }
-            
-            return isSystem;
+            return isSystemApp(context, packageManager.getApplicationInfo(packageName, 0));
         } catch (PackageManager.NameNotFoundException e) {
             return false;
         }
     }
     
     /**
-     * Determine the category of an app based on its name
+     * Same classification from an ApplicationInfo the caller already has
      */
-    private String getCategoryForApp(String appName) {
-        String lowerCaseName = appName.toLowerCase();
+    static boolean isSystemApp(Context context, ApplicationInfo appInfo) {
+        // Check if it's a system app
+        boolean isSystem = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
         
-        if (lowerCaseName.contains("instagram") || 
-            lowerCaseName.contains("facebook") || 
-            lowerCaseName.contains("twitter") || 
-            lowerCaseName.contains("tiktok") || 
-            lowerCaseName.contains("snapchat") || 
-            lowerCaseName.contains("whatsapp") || 
-            lowerCaseName.contains("telegram") || 
-            lowerCaseName.contains("messenger")) {
-            return "Social Media";
-        } else if (lowerCaseName.contains("youtube") || 
-                  lowerCaseName.contains("netflix") || 
-                  lowerCaseName.contains("hulu") || 
-                  lowerCaseName.contains("disney") || 
-                  lowerCaseName.contains("spotify") || 
-                  lowerCaseName.contains("music") || 
-                  lowerCaseName.contains("video") || 
-                  lowerCaseName.contains("player") || 
-                  lowerCaseName.contains("movie")) {
-            return "Entertainment";
-        } else if (lowerCaseName.contains("chrome") || 
-                  lowerCaseName.contains("safari") || 
-                  lowerCaseName.contains("firefox") || 
-                  lowerCaseName.contains("edge") || 
-                  lowerCaseName.contains("browser") || 
-                  lowerCaseName.contains("gmail") || 
-                  lowerCaseName.contains("outlook") || 
-                  lowerCaseName.contains("office") || 
-                  lowerCaseName.contains("word") || 
-                  lowerCaseName.contains("excel") || 
-                  lowerCaseName.contains("powerpoint") || 
-                  lowerCaseName.contains("docs")) {
-            return "Productivity";
-        } else if (lowerCaseName.contains("game") || 
-                  lowerCaseName.contains("minecraft") || 
-                  lowerCaseName.contains("fortnite") || 
-                  lowerCaseName.contains("roblox") || 
-                  lowerCaseName.contains("pubg") || 
-                  lowerCaseName.contains("cod") || 
-                  lowerCaseName.contains("league") || 
-                  lowerCaseName.contains("dota")) {
-            return "Games";
-        } else if (lowerCaseName.contains("duolingo") || 
-                  lowerCaseName.contains("khan") || 
-                  lowerCaseName.contains("academy") || 
-                  lowerCaseName.contains("learn") || 
-                  lowerCaseName.contains("course") || 
-                  lowerCaseName.contains("study") || 
-                  lowerCaseName.contains("school") || 
-                  lowerCaseName.contains("education")) {
-            return "Education";
-        } else {
-            return "Other";
+        // Explicitly include common browsers, mail apps, and navigation apps even if they are system apps
+        if (isSystem && AppRules.getInstance(context).isCommonApp(appInfo.packageName)) {
+            // This is a commonly used app, include it in tracking
+            return false;
         }
+        
+        return isSystem;
     }
     
     /**
@@ -1920,28 +2227,26 @@ public class AppUsageTracker extends Plugin {
             return "";
         }
         
-        // For debugging purposes, log the package we're trying to get
-        Log.d(TAG, "Getting icon for: " + packageName);
-        
         try {
-            // For efficiency, check memory cache first
-            String cachedIcon = iconCache.get(packageName);
-            if (cachedIcon != null && !cachedIcon.isEmpty()) {
+            // Memory tier first, then the disk tier if it still holds this version's icon
+            int packageId = PackageDictionary.getInstance(getContext()).intern(packageName);
+            AppMetadataCatalog catalog = AppMetadataCatalog.getInstance(getContext());
+            AppMetadataCatalog.Entry entry = catalog.get(packageName);
+            IconCache iconCache = IconCache.getInstance(getContext());
+            String cachedIcon = iconCache.get(packageId, entry != null ? entry.iconHash : null);
+            if (cachedIcon != null) {
                 return cachedIcon;
             }
             
-            // Generate the icon directly (skip disk cache for now to simplify)
-            String iconBase64 = generateAppIconBase64(packageName);
-            
-            // Only store valid icons in the cache
-            if (iconBase64 != null && !iconBase64.isEmpty()) {
-                // Update memory cache
-                iconCache.put(packageName, iconBase64);
-                
-                // Skip disk caching for now - we'll focus on reliable in-memory cache
+            byte[] iconData = renderIconData(packageName);
+            if (iconData == null) {
+                return "";
             }
             
-            return iconBase64;
+            String hash = AppMetadataCatalog.contentHash(iconData);
+            String icon = iconCache.put(packageId, hash, iconData);
+            catalog.setIconHash(packageName, hash);
+            return icon;
         } catch (Exception e) {
             Log.e(TAG, "Error getting app icon for " + packageName, e);
             return ""; // Return empty string on error
@@ -1949,9 +2254,69 @@ public class AppUsageTracker extends Plugin {
     }
     
     /**
-     * Generate app icon without caching (original implementation)
+     * URL of the app icon file in the icon store, served by the WebView's local
+     * server so the WebView loads and caches it itself. Files are named by
+     * content hash, so a URL never changes its content. Returns null if the
+     * package has no icon.
+     */
+    private String getAppIconUrl(String packageName) {
+        File iconFile = getAppIconFile(packageName);
+        return iconFile != null ? getLocalFileUrl(iconFile) : null;
+    }
+    
+    /**
+     * URL under which the WebView's local server serves a file of the app
+     */
+    private String getLocalFileUrl(File file) {
+        return getBridge().getLocalUrl() + Bridge.CAPACITOR_FILE_START + file.getAbsolutePath();
+    }
+    
+    /**
+     * The app icon file in the icon store, rendering it on first use; null if the package has no icon
+     */
+    private File getAppIconFile(String packageName) {
+        AppMetadataCatalog catalog = AppMetadataCatalog.getInstance(getContext());
+        AppMetadataCatalog.Entry entry = catalog.get(packageName);
+        if (entry == null) {
+            return null;
+        }
+        
+        int packageId = PackageDictionary.getInstance(getContext()).intern(packageName);
+        IconCache iconCache = IconCache.getInstance(getContext());
+        File iconFile = iconCache.getFile(packageId, entry.iconHash);
+        if (iconFile == null) {
+            byte[] iconData = renderIconData(packageName);
+            if (iconData == null) {
+                return null;
+            }
+            String hash = AppMetadataCatalog.contentHash(iconData);
+            iconFile = iconCache.store(packageId, hash, iconData);
+            if (iconFile == null) {
+                return null;
+            }
+            catalog.setIconHash(packageName, hash);
+        }
+        return iconFile;
+    }
+    
+    /**
+     * Render and compress the app icon, or null if the package has none
+     */
+    private byte[] renderIconData(String packageName) {
+        Log.d(TAG, "Rendering icon for: " + packageName);
+        android.graphics.Bitmap bitmap = renderAppIcon(packageName);
+        if (bitmap == null) {
+            return null;
+        }
+        byte[] iconData = encodeIcon(bitmap);
+        bitmap.recycle();
+        return iconData;
+    }
+    
+    /**
+     * Draw the app icon into a fixed-size bitmap, or null if the package has none
      */
-    private String generateAppIconBase64(String packageName) {
+    private android.graphics.Bitmap renderAppIcon(String packageName) {
         try {
             PackageManager packageManager = getContext().getPackageManager();
             ApplicationInfo appInfo = null;
@@ -1961,18 +2326,18 @@ public class AppUsageTracker extends Plugin {
                 appInfo = packageManager.getApplicationInfo(packageName, 0);
             } catch (Exception e) {
                 Log.w(TAG, "Package not found: " + packageName, e);
-                return "";
+                return null;
             }
             
             // Get drawable icon directly - simpler and more reliable
             android.graphics.drawable.Drawable icon = appInfo.loadIcon(packageManager);
             if (icon == null) {
                 Log.w(TAG, "Icon is null for " + packageName);
-                return "";
+                return null;
             }
             
             // Create a bitmap with fixed size to ensure consistency
-            android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(144, 144, 
+            android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, 
                     android.graphics.Bitmap.Config.ARGB_8888);
             android.graphics.Canvas canvas = new android.graphics.Canvas(bitmap);
             
@@ -1980,141 +2345,40 @@ public class AppUsageTracker extends Plugin {
             canvas.drawColor(android.graphics.Color.TRANSPARENT);
             
             // Scale the icon to fit
-            icon.setBounds(0, 0, 144, 144);
+            icon.setBounds(0, 0, ICON_SIZE, ICON_SIZE);
             icon.draw(canvas);
             
-            return bitmapToBase64(bitmap);
+            return bitmap;
         } catch (Exception e) {
-            Log.e(TAG, "Error in generateAppIconBase64 for " + packageName, e);
-            return "";
+            Log.e(TAG, "Error rendering icon for " + packageName, e);
+            return null;
         }
     }
     
     /**
-     * Convert bitmap to Base64 string with optimized compression
+     * Compress a rendered icon to WebP, which keeps transparency at a fraction of the PNG size
      */
-    private String bitmapToBase64(android.graphics.Bitmap bitmap) {
+    @SuppressWarnings("deprecation")
+    private byte[] encodeIcon(android.graphics.Bitmap bitmap) {
         try {
-            // Use a ByteArrayOutputStream to store compressed bitmap data
             java.io.ByteArrayOutputStream outputStream = new java.io.ByteArrayOutputStream();
-            
-            // Use PNG format with transparency support
-            bitmap.compress(android.graphics.Bitmap.CompressFormat.PNG, 90, outputStream);
-            
-            // Get byte array
-            byte[] bitmapData = outputStream.toByteArray();
-            
-            // Convert to Base64 with proper data URL format for React/HTML
-            String base64 = "data:image/png;base64," + android.util.Base64.encodeToString(bitmapData, android.util.Base64.NO_WRAP);
-            
-            // Log success and size for debugging
-            Log.d(TAG, "Generated icon, size: " + (bitmapData.length / 1024) + "KB");
-            
-            return base64;
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting bitmap to Base64", e);
-            return "";
-        }
-    }
-    
-    /**
-     * Load icon from disk cache
-     */
-    private String loadIconFromDiskCache(String packageName) {
-        try {
-            // Create cache directory if it doesn't exist
-            File cacheDir = new File(getContext().getCacheDir(), ICON_CACHE_DIR);
-            if (!cacheDir.exists()) {
+            android.graphics.Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? android.graphics.Bitmap.CompressFormat.WEBP_LOSSY
+                : android.graphics.Bitmap.CompressFormat.WEBP;
+            if (!bitmap.compress(format, ICON_QUALITY, outputStream)) {
+                Log.w(TAG, "Could not compress icon");
                 return null;
             }
             
-            // Create cache file path
-            File cacheFile = new File(cacheDir, packageName.replace(".", "_") + ".txt");
-            if (!cacheFile.exists() || !cacheFile.canRead()) {
-                return null;
-            }
-            
-            // Read the cache file
-            java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(cacheFile));
-            String line = reader.readLine();
-            reader.close();
-            
-            return line;
+            byte[] iconData = outputStream.toByteArray();
+            Log.d(TAG, "Encoded icon, size: " + (iconData.length / 1024) + "KB");
+            return iconData;
         } catch (Exception e) {
-            Log.e(TAG, "Error loading icon from disk cache for " + packageName, e);
+            Log.e(TAG, "Error encoding icon", e);
             return null;
         }
     }
     
-    /**
-     * Save icon to disk cache
-     */
-    private void saveIconToDiskCache(String packageName, String iconBase64) {
-        try {
-            // Create cache directory if it doesn't exist
-            File cacheDir = new File(getContext().getCacheDir(), ICON_CACHE_DIR);
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
-            }
-            
-            // Create cache file path
-            File cacheFile = new File(cacheDir, packageName.replace(".", "_") + ".txt");
-            
-            // Write the cache file
-            java.io.FileWriter writer = new java.io.FileWriter(cacheFile);
-            writer.write(iconBase64);
-            writer.close();
-            
-            Log.d(TAG, "Saved icon to disk cache for " + packageName);
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving icon to disk cache for " + packageName, e);
-        }
-    }
-    
-    /**
-     * Clean up cache if needed
-     */
-    private void cleanupCacheIfNeeded() {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - iconCacheLastCleanup > CACHE_CLEANUP_INTERVAL) {
-            // Update the last cleanup time
-            iconCacheLastCleanup = currentTime;
-            
-            // Run cleanup on a background thread
-            backgroundExecutor.execute(() -> {
-                try {
-                    // Create cache directory if it doesn't exist
-                    File cacheDir = new File(getContext().getCacheDir(), ICON_CACHE_DIR);
-                    if (!cacheDir.exists()) {
-                        return;
-                    }
-                    
-                    // Get all cache files
-                    File[] cacheFiles = cacheDir.listFiles();
-                    if (cacheFiles == null || cacheFiles.length == 0) {
-                        return;
-                    }
-                    
-                    // Delete older files if we have too many (keep 100 most recent)
-                    if (cacheFiles.length > 100) {
-                        // Sort by last modified time
-                        java.util.Arrays.sort(cacheFiles, (f1, f2) -> 
-                            Long.compare(f2.lastModified(), f1.lastModified()));
-                        
-                        // Delete older files
-                        for (int i = 100; i < cacheFiles.length; i++) {
-                            cacheFiles[i].delete();
-                        }
-                        
-                        Log.d(TAG, "Cleaned up icon cache, kept 100 most recent icons");
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error cleaning up icon cache", e);
-                }
-            });
-        }
-    }
-
     private boolean hasAppInfoPermission() {
         try {
             PackageManager packageManager = getContext().getPackageManager();
@@ -2576,20 +2840,8 @@ public class AppUsageTracker extends Plugin {
             }
 
             // Schedule periodic service check
-            if (scheduler == null || scheduler.isShutdown()) {
-                scheduler = Executors.newSingleThreadScheduledExecutor();
-                scheduler.scheduleAtFixedRate(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            ensureServiceRunning();
-                            Thread.sleep((long)(Math.random() * 5000));
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in service check", e);
-                        }
-                    }
-                }, 1, 5, TimeUnit.MINUTES);
-            }
+            serviceChecksEnabled = true;
+            startServiceChecks();
 
             // Request battery optimization exemption
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -2923,26 +3175,16 @@ public class AppUsageTracker extends Plugin {
     /**
      * Get the start of the current day in milliseconds
      */
-    private static long getStartOfDay() {
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-        return calendar.getTimeInMillis();
+    private long getStartOfDay() {
+        return DayBoundary.getInstance(getContext()).getDayStart();
     }
 
     /**
      * Get the display name of an app from its package name
      */
-    private static String getAppName(Context context, String packageName) {
-        try {
-            PackageManager packageManager = context.getPackageManager();
-            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-            return packageManager.getApplicationLabel(appInfo).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            return packageName;
-        }
+    static String getAppName(Context context, String packageName) {
+        AppMetadataCatalog.Entry entry = AppMetadataCatalog.getInstance(context).get(packageName);
+        return entry != null ? entry.label : packageName;
     }
 
     // Add a method to safely update settings
@@ -14,8 +14,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.content.pm.ServiceInfo;
 import android.graphics.Color;
 import android.os.Binder;
@@ -30,7 +28,6 @@ import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -56,26 +53,23 @@ public class BackgroundService extends Service {
     private static final int NOTIFICATION_ID_LIMIT_REACHED = SettingsConstants.NOTIFICATION_ID_LIMIT_REACHED;
     private static final int NOTIFICATION_ID_APPROACHING_LIMIT = SettingsConstants.NOTIFICATION_ID_APPROACHING_LIMIT;
     private static final int NOTIFICATION_ID_BACKGROUND_SERVICE = SettingsConstants.NOTIFICATION_ID_BACKGROUND_SERVICE;
-    private static final long UPDATE_INTERVAL = SettingsConstants.UPDATE_INTERVAL;
     private static final long WATCHDOG_INTERVAL = SettingsConstants.WATCHDOG_INTERVAL;
     private static final String ACTION_RESTART_SERVICE = SettingsConstants.ACTION_RESTART_SERVICE;
     private static final int SERVICE_RESTART_ALARM_ID = SettingsConstants.SERVICE_RESTART_ALARM_ID;
     private static boolean isRunning = false;
-    private static ScheduledExecutorService scheduler;
     private static ScheduledExecutorService watchdogScheduler;
     private AlarmManager alarmManager;
     private PendingIntent restartIntent;
+    private PendingIntent limitAlarmIntent;
 
     private final IBinder binder = new LocalBinder();
     private Handler mainHandler;
     private long startTime;
     private boolean isTracking = false;
-    private PowerManager.WakeLock wakeLock;
     private UsageStatsManager usageStatsManager;
     private String lastForegroundApp = "";
     private long lastUpdateTime = 0;
     private Map<String, Long> appUsageMap = new HashMap<>();
-    private Runnable updateRunnable;
     private Runnable watchdogRunnable;
 
     private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
@@ -89,8 +83,12 @@ public class BackgroundService extends Service {
         public void onReceive(Context context, Intent intent) {
             try {
                 String action = intent.getAction();
+                String packageName = intent.getData().getSchemeSpecificPart();
+
+                // Installs, uninstalls and updates can change the label, icon and system flag of a package
+                PackageDictionary.getInstance(context).invalidate(packageName);
+
                 if (Intent.ACTION_PACKAGE_REPLACED.equals(action)) {
-                    String packageName = intent.getData().getSchemeSpecificPart();
                     if (packageName.equals(getPackageName())) {
                         Log.d(TAG, "Our app was updated, restarting service");
                         restartService();
@@ -127,6 +125,31 @@ public class BackgroundService extends Service {
         }
     };
 
+    // Usage can only grow while the screen is on: limit alarms are planned around
+    // screen transitions and the watchdog sleeps while the screen is off
+    private final ScreenStateCoordinator.ScreenStateListener screenStateListener =
+            new ScreenStateCoordinator.ScreenStateListener() {
+        @Override
+        public void onScreenOff() {
+            if (mainHandler != null && watchdogRunnable != null) {
+                mainHandler.removeCallbacks(watchdogRunnable);
+            }
+            backgroundExecutor.execute(() -> {
+                updateAppUsage();
+                cancelLimitAlarm();
+            });
+        }
+
+        @Override
+        public void onScreenOn() {
+            backgroundExecutor.execute(BackgroundService.this::updateAndPlanLimitAlarm);
+            if (mainHandler != null && watchdogRunnable != null) {
+                mainHandler.removeCallbacks(watchdogRunnable);
+                mainHandler.postDelayed(watchdogRunnable, SettingsConstants.WATCHDOG_INTERVAL);
+            }
+        }
+    };
+
     public class LocalBinder extends Binder {
         BackgroundService getService() {
             return BackgroundService.this;
@@ -149,32 +172,20 @@ public class BackgroundService extends Service {
                 this, SettingsConstants.SERVICE_RESTART_ALARM_ID, intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
             );
+            Intent limitIntent = new Intent(this, BackgroundService.class);
+            limitIntent.setAction(SettingsConstants.ACTION_LIMIT_ALARM);
+            limitAlarmIntent = PendingIntent.getService(
+                this, SettingsConstants.LIMIT_ALARM_ID, limitIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
 
             createNotificationChannel();
             mainHandler = new Handler(Looper.getMainLooper());
             startTime = System.currentTimeMillis();
             isRunning = true;
             
-            // Set up the update runnable
-            updateRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        if (isRunning) {
-                            updateAppUsage();
-                            mainHandler.postDelayed(this, SettingsConstants.UPDATE_INTERVAL);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error in background update cycle", e);
-                        if (isRunning) {
-                            mainHandler.postDelayed(this, 30000);
-                        }
-                    }
-                }
-            };
-            
-            // Start the update runnable
-            mainHandler.post(updateRunnable);
+            // Check once now, then only when the planned limit alarm fires or the screen state changes
+            backgroundExecutor.execute(this::updateAndPlanLimitAlarm);
             
             // Set up the watchdog runnable
             watchdogRunnable = new Runnable() {
@@ -187,7 +198,7 @@ public class BackgroundService extends Service {
                             return;
                         }
                         
-                        if (isRunning) {
+                        if (isRunning && ScreenStateCoordinator.getInstance(BackgroundService.this).isInteractive()) {
                             mainHandler.postDelayed(this, SettingsConstants.WATCHDOG_INTERVAL);
                         }
                     } catch (Exception e) {
@@ -204,16 +215,6 @@ public class BackgroundService extends Service {
             
             // Start as foreground service
             startForeground(SettingsConstants.NOTIFICATION_ID_BACKGROUND_SERVICE, createHighPriorityNotification());
-            
-            // Acquire partial wake lock
-            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            if (powerManager != null) {
-                wakeLock = powerManager.newWakeLock(
-                    PowerManager.PARTIAL_WAKE_LOCK,
-                    "ScreenTimeReminder::BackgroundTracking"
-                );
-                wakeLock.acquire();
-            }
 
             // Schedule service restart alarm
             scheduleServiceRestartAlarm();
@@ -229,6 +230,8 @@ public class BackgroundService extends Service {
     private void registerReceivers() {
         // Register package update receiver
         IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
         packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
         packageFilter.addDataScheme("package");
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -245,6 +248,9 @@ public class BackgroundService extends Service {
             registerReceiver(restartReceiver, restartFilter);
         }
 
+        // Follow screen state for alarm planning and the watchdog
+        ScreenStateCoordinator.getInstance(this).addListener(screenStateListener);
+
         // Register usage update receiver
         IntentFilter usageFilter = new IntentFilter(SettingsConstants.ACTION_USAGE_UPDATE);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -326,6 +332,79 @@ public class BackgroundService extends Service {
         }
     }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && SettingsConstants.ACTION_LIMIT_ALARM.equals(intent.getAction())) {
+            Log.d(TAG, "Limit alarm fired");
+            backgroundExecutor.execute(this::updateAndPlanLimitAlarm);
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    private void updateAndPlanLimitAlarm() {
+        updateAppUsage();
+        planLimitAlarm();
+    }
+
+    /**
+     * Schedule one exact alarm at the projected time the next limit threshold is crossed.
+     * While a tracked app is in the foreground the total grows in real time, so the
+     * crossing is now plus the remaining time. Otherwise nothing can cross until the
+     * user opens an app, which can happen right after planning: the alarm is then set
+     * at the remaining headroom (at least MIN_LIMIT_ALARM_SLACK), so a crossing after
+     * an app switch is at most that late. With the screen off no alarm is scheduled at all.
+     */
+    private void planLimitAlarm() {
+        try {
+            cancelLimitAlarm();
+
+            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && !powerManager.isInteractive()) {
+                Log.d(TAG, "Screen is off, no limit alarm needed");
+                return;
+            }
+
+            Context context = getApplicationContext();
+            long now = System.currentTimeMillis();
+            long next = now + SettingsConstants.MAX_LIMIT_ALARM_HORIZON;
+
+            UsageAggregationEngine engine = UsageAggregationEngine.getInstance(context);
+            UsageAggregationEngine.Snapshot snapshot = engine.refresh();
+            if (snapshot != null) {
+                long limitMs = SettingsManager.getInstance(context).getScreenTimeLimit() * 60000;
+                long approachingMs = limitMs * 90 / 100;
+                long totalMs = snapshot.getTotalTimeMs();
+                long crossing;
+                if (totalMs < approachingMs) {
+                    crossing = now + approachingMs - totalMs;
+                } else if (totalMs < limitMs) {
+                    crossing = now + limitMs - totalMs;
+                } else {
+                    // Past the limit, reminders repeat at the notification frequency
+                    crossing = now + AppUsageTracker.getNotificationFrequencyStatic(context) * 60000L;
+                }
+                next = Math.min(next, snapshot.isForeground() ? crossing : AppLimitTable.withSlack(crossing, now));
+            }
+            next = Math.min(next, AppLimitTable.getInstance(context).getNextCrossing(engine, now));
+            next = Math.max(next, now + 1000);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, limitAlarmIntent);
+            } else {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, limitAlarmIntent);
+            }
+            Log.d(TAG, "Planned limit alarm in " + ((next - now) / 1000) + " seconds");
+        } catch (Exception e) {
+            Log.e(TAG, "Error planning limit alarm", e);
+        }
+    }
+
+    private void cancelLimitAlarm() {
+        if (alarmManager != null && limitAlarmIntent != null) {
+            alarmManager.cancel(limitAlarmIntent);
+        }
+    }
+
     @Override
     public void onDestroy() {
         try {
@@ -341,23 +420,17 @@ public class BackgroundService extends Service {
                 Log.e(TAG, "Error unregistering receivers", e);
             }
             
-            // Clean up executors
-            if (scheduler != null) {
-                scheduler.shutdownNow();
+            cancelLimitAlarm();
+            ScreenStateCoordinator.getInstance(this).removeListener(screenStateListener);
+            if (mainHandler != null && watchdogRunnable != null) {
+                mainHandler.removeCallbacks(watchdogRunnable);
             }
+            
+            // Clean up executors
             if (watchdogScheduler != null) {
                 watchdogScheduler.shutdownNow();
             }
             
-            // Release wake lock
-            if (wakeLock != null && wakeLock.isHeld()) {
-                try {
-                    wakeLock.release();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error releasing wake lock", e);
-                }
-            }
-            
             super.onDestroy();
             
             // Schedule service restart
@@ -387,58 +460,19 @@ public class BackgroundService extends Service {
                 AppUsageTracker.getNotificationFrequencyStatic(getApplicationContext())
             );
             
+            // Per-app and group limits read the engine's per-app counters, no recompute
+            Context context = getApplicationContext();
+            AppLimitTable.getInstance(context).check(context, UsageAggregationEngine.getInstance(context),
+                DayBoundary.getInstance(context).getDayStart());
+            
         } catch (Exception e) {
             Log.e(TAG, "Error updating app usage", e);
         }
     }
 
     private float getTodayScreenTime(Context context) {
-        try {
-            // Get start of day
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(Calendar.HOUR_OF_DAY, 0);
-            calendar.set(Calendar.MINUTE, 0);
-            calendar.set(Calendar.SECOND, 0);
-            calendar.set(Calendar.MILLISECOND, 0);
-            long startTime = calendar.getTimeInMillis();
-            long endTime = System.currentTimeMillis();
-
-            // Get app usage data
-            UsageStatsManager usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
-            if (usageStatsManager == null) {
-                return 0;
-            }
-
-            List<UsageStats> stats = usageStatsManager.queryUsageStats(
-                UsageStatsManager.INTERVAL_DAILY, startTime, endTime
-            );
-
-            if (stats == null) {
-                return 0;
-            }
-
-            float totalMinutes = 0;
-            String ourPackage = context.getPackageName();
-
-            for (UsageStats stat : stats) {
-                String packageName = stat.getPackageName();
-                
-                // Skip our own app and system apps
-                if (packageName.equals(ourPackage) || isSystemApp(packageName)) {
-                    continue;
-                }
-
-                // Only count time if the app was used today
-                if (stat.getLastTimeUsed() >= startTime) {
-                    totalMinutes += stat.getTotalTimeInForeground() / (60f * 1000f);
-                }
-            }
-
-            return totalMinutes;
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting today's screen time", e);
-            return 0;
-        }
+        float totalMinutes = UsageAggregationEngine.getInstance(context).getTodayScreenTimeMinutes();
+        return totalMinutes >= 0 ? totalMinutes : 0;
     }
 
     private void updateAppUsageTime(String packageName, long timeSpent) {
@@ -535,41 +569,6 @@ public class BackgroundService extends Service {
         }
     }
 
-    private long getStartOfDay() {
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-        return calendar.getTimeInMillis();
-    }
-
-    private boolean isSystemApp(String packageName) {
-        try {
-            PackageManager packageManager = getPackageManager();
-            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-            return (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-        } catch (PackageManager.NameNotFoundException e) {
-            return false;
-        }
-    }
-
-    private String getAppName(String packageName) {
-        try {
-            PackageManager packageManager = getPackageManager();
-            ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-            return packageManager.getApplicationLabel(appInfo).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            return packageName;
-        }
-    }
-
-    private String getCategoryForApp(String appName) {
-        // Implement the logic to determine the category for a given app name
-        // This is a placeholder and should be replaced with the actual implementation
-        return "Uncategorized";
-    }
-
     private void restartService() {
         try {
             Log.d(TAG, "Attempting to restart service");
@@ -596,62 +595,6 @@ public class BackgroundService extends Service {
         }
     }
 
-    private void verifyBackgroundUpdates() {
-        try {
-            SharedPreferences prefs = getSharedPreferences(SettingsConstants.PREFS_NAME, Context.MODE_PRIVATE);
-            long lastUpdate = prefs.getLong("lastUpdateTime", 0);
-            long currentTime = System.currentTimeMillis();
-            
-            // If no updates for more than 2 minutes, restart updates
-            if (currentTime - lastUpdate > 2 * 60 * 1000) {
-                Log.w(TAG, "Background updates seem stalled, restarting");
-                if (updateRunnable != null) {
-                    mainHandler.removeCallbacks(updateRunnable);
-                    mainHandler.post(updateRunnable);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error verifying background updates", e);
-        }
-    }
-
-    private void startPeriodicUpdates() {
-        try {
-            if (scheduler != null && !scheduler.isShutdown()) {
-                scheduler.shutdown();
-            }
-
-            // Always update every minute to ensure we have fresh data
-            final long UPDATE_INTERVAL = 60 * 1000; // 1 minute in milliseconds
-            
-            Log.d(TAG, "Starting periodic updates with 1 minute interval");
-
-            scheduler = Executors.newSingleThreadScheduledExecutor();
-            scheduler.scheduleAtFixedRate(() -> {
-                try {
-                    if (isTracking) {
-                        // Get fresh values each time
-                        SharedPreferences currentPrefs = getSharedPreferences(AppUsageTracker.PREFS_NAME, Context.MODE_PRIVATE);
-                        long currentLimit = currentPrefs.getLong(AppUsageTracker.KEY_SCREEN_TIME_LIMIT, AppUsageTracker.DEFAULT_SCREEN_TIME_LIMIT);
-                        long currentFrequency = currentPrefs.getLong(AppUsageTracker.KEY_NOTIFICATION_FREQUENCY, AppUsageTracker.DEFAULT_NOTIFICATION_FREQUENCY);
-                        
-                        Log.d(TAG, "Periodic update with current values - Frequency: " + currentFrequency + 
-                              " minutes, Limit: " + currentLimit + " minutes");
-                        
-                        // Update app usage with current values
-                        updateAppUsage();
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in periodic update", e);
-                }
-            }, 0, 1, TimeUnit.MINUTES);
-
-            Log.d(TAG, "Periodic updates scheduled every minute");
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting periodic updates", e);
-        }
-    }
-
     private void setupWatchdog() {
         try {
             if (watchdogScheduler == null || watchdogScheduler.isShutdown()) {
@@ -661,8 +604,6 @@ public class BackgroundService extends Service {
                         if (!isRunning) {
                             Log.d(TAG, "Watchdog: Service not running, restarting");
                             restartService();
-                        } else {
-                            verifyBackgroundUpdates();
                         }
                     } catch (Exception e) {
                         Log.e(TAG, "Error in watchdog", e);
@@ -0,0 +1,204 @@
+package com.screentimereminder.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide owner of the current local day window [dayStart, nextDayStart).
+ * The window is computed once per day instead of on every call, recomputed
+ * when the time or time zone is changed, and a single rollover is scheduled
+ * at the boundary so listeners roll over once instead of every reader
+ * noticing the new day on its own. Days are computed with Calendar, so DST
+ * days are 23 or 25 hours long.
+ * The handler callback runs on uptime, which stops in deep sleep, so an RTC
+ * alarm for the same boundary backs it up; it doesn't wake the device and is
+ * delivered soon after the device wakes up. Readers don't depend on either:
+ * getDayStart() checks the window against the clock on every call (the
+ * aggregation engine calls it on each refresh) and rolls over when it is stale.
+ */
+public class DayBoundary {
+    private static final String TAG = "DayBoundary";
+    private static DayBoundary instance;
+    private static final Object lock = new Object();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AlarmManager alarmManager;
+    private final PendingIntent rolloverAlarmIntent;
+    private final List<DayChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable rolloverRunnable = this::checkRollover;
+    private long dayStart;
+    private long nextDayStart;
+
+    /**
+     * Called when the current day window changes, from midnight or a time/time zone change
+     */
+    public interface DayChangeListener {
+        void onDayChanged(long previousDayStart, long newDayStart);
+    }
+
+    private final BroadcastReceiver timeChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Clock changed: " + intent.getAction());
+            checkRollover();
+        }
+    };
+
+    private final BroadcastReceiver rolloverAlarmReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            checkRollover();
+        }
+    };
+
+    private DayBoundary(Context context) {
+        Context appContext = context.getApplicationContext();
+        long now = System.currentTimeMillis();
+        dayStart = getStartOfDay(now);
+        nextDayStart = getNextDayStart(dayStart);
+
+        // System broadcasts, no export flag needed
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        appContext.registerReceiver(timeChangeReceiver, filter);
+
+        // Both processes share the alarm (same PendingIntent) and each receives its broadcast
+        IntentFilter alarmFilter = new IntentFilter(SettingsConstants.ACTION_DAY_ROLLOVER);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            appContext.registerReceiver(rolloverAlarmReceiver, alarmFilter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            appContext.registerReceiver(rolloverAlarmReceiver, alarmFilter);
+        }
+        alarmManager = (AlarmManager) appContext.getSystemService(Context.ALARM_SERVICE);
+        Intent alarmIntent = new Intent(SettingsConstants.ACTION_DAY_ROLLOVER).setPackage(appContext.getPackageName());
+        rolloverAlarmIntent = PendingIntent.getBroadcast(appContext, SettingsConstants.DAY_ROLLOVER_ALARM_ID,
+            alarmIntent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        scheduleRollover(now);
+    }
+
+    public static DayBoundary getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new DayBoundary(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Start of the current local day. Only recomputed when the boundary has been crossed.
+     */
+    public long getDayStart() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now >= dayStart && now < nextDayStart) {
+                return dayStart;
+            }
+        }
+        checkRollover();
+        synchronized (this) {
+            return dayStart;
+        }
+    }
+
+    /**
+     * Start of the next local day (the end of the current window)
+     */
+    public long getNextDayStart() {
+        getDayStart();
+        synchronized (this) {
+            return nextDayStart;
+        }
+    }
+
+    public void addListener(DayChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DayChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Recompute the window and notify the listeners if it moved
+     */
+    private void checkRollover() {
+        long now = System.currentTimeMillis();
+        long previousDayStart;
+        long newDayStart;
+        synchronized (this) {
+            previousDayStart = dayStart;
+            dayStart = getStartOfDay(now);
+            nextDayStart = getNextDayStart(dayStart);
+            newDayStart = dayStart;
+        }
+        scheduleRollover(now);
+
+        if (newDayStart != previousDayStart) {
+            Log.d(TAG, "Day changed from " + previousDayStart + " to " + newDayStart);
+            for (DayChangeListener listener : listeners) {
+                try {
+                    listener.onDayChanged(previousDayStart, newDayStart);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error notifying day change listener", e);
+                }
+            }
+        }
+    }
+
+    private void scheduleRollover(long now) {
+        long boundary;
+        synchronized (this) {
+            boundary = nextDayStart;
+        }
+        handler.removeCallbacks(rolloverRunnable);
+        handler.postDelayed(rolloverRunnable, Math.max(0, boundary - now) + 1);
+
+        if (alarmManager != null) {
+            try {
+                // Inexact and non-waking, readers catch up through getDayStart() anyway
+                alarmManager.set(AlarmManager.RTC, boundary + 1, rolloverAlarmIntent);
+            } catch (Exception e) {
+                Log.e(TAG, "Error scheduling day rollover alarm", e);
+            }
+        }
+    }
+
+    /**
+     * Start of the local day containing time
+     */
+    public static long getStartOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Start of the local day after the one starting at dayStart
+     */
+    public static long getNextDayStart(long dayStart) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(dayStart);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,114 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Packs a set of app icons into one grid image, so a list screen decodes a
+ * single bitmap instead of one image per app. Atlases are written to
+ * cache/icon_atlas named by the key of their icon set and reused until the
+ * set or one of its icons changes; only the most recently used atlases are
+ * kept.
+ */
+public class IconAtlas {
+    private static final String TAG = "IconAtlas";
+    private static final String ATLAS_DIR = "icon_atlas";
+    private static final int ATLAS_QUALITY = 90;
+
+    private IconAtlas() {
+    }
+
+    /**
+     * Number of grid columns for count icons (a roughly square atlas)
+     */
+    public static int getColumns(int count) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(count)));
+    }
+
+    /**
+     * The atlas file for key, built from the icon files (null entries stay
+     * empty cells) in row-major order if it does not exist yet. Returns null
+     * if icons is empty or the atlas could not be written.
+     */
+    @SuppressWarnings("deprecation")
+    public static synchronized File getOrBuild(Context context, String key, File[] icons, int cellSize) {
+        if (icons.length == 0) {
+            return null;
+        }
+        File directory = new File(context.getCacheDir(), ATLAS_DIR);
+        File atlasFile = new File(directory, key + ".webp");
+        if (atlasFile.exists()) {
+            // Mark as recently used for pruning
+            atlasFile.setLastModified(System.currentTimeMillis());
+            return atlasFile;
+        }
+
+        int columns = getColumns(icons.length);
+        int rows = (icons.length + columns - 1) / columns;
+        Bitmap atlas = Bitmap.createBitmap(columns * cellSize, rows * cellSize, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(atlas);
+            for (int i = 0; i < icons.length; i++) {
+                if (icons[i] == null) {
+                    continue;
+                }
+                Bitmap icon = BitmapFactory.decodeFile(icons[i].getAbsolutePath());
+                if (icon == null) {
+                    Log.w(TAG, "Could not decode " + icons[i]);
+                    continue;
+                }
+                // Icons are rendered at cellSize already, no scaling needed
+                canvas.drawBitmap(icon, (i % columns) * cellSize, (i / columns) * cellSize, null);
+                icon.recycle();
+            }
+
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            File tempFile = new File(directory, key + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY
+                    : Bitmap.CompressFormat.WEBP;
+                if (!atlas.compress(format, ATLAS_QUALITY, out)) {
+                    throw new IOException("Could not compress atlas");
+                }
+            }
+            if (!tempFile.renameTo(atlasFile)) {
+                throw new IOException("Could not move atlas into place");
+            }
+            Log.d(TAG, "Built atlas of " + icons.length + " icons, size: " + (atlasFile.length() / 1024) + "KB");
+        } catch (IOException e) {
+            Log.e(TAG, "Error building icon atlas", e);
+            return null;
+        } finally {
+            atlas.recycle();
+        }
+
+        prune(directory);
+        return atlasFile;
+    }
+
+    /**
+     * Keep only the most recently used atlases
+     */
+    private static void prune(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= SettingsConstants.MAX_ICON_ATLASES) {
+            return;
+        }
+        Arrays.sort(files, (f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
+        for (int i = SettingsConstants.MAX_ICON_ATLASES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+}
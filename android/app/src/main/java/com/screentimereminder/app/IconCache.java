@@ -0,0 +1,421 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of rendered app icons, keyed by PackageDictionary id.
+ * The memory tier is an LRU bounded by the total size of the cached data
+ * URLs rather than by entry count, so users with hundreds of apps keep only
+ * the most recently shown icons in memory. Behind it, the disk tier stores
+ * the WebP bytes once per content hash (apps sharing an icon share the
+ * file), and a small index maps package ids to hashes. All methods are
+ * thread-safe.
+ */
+public class IconCache {
+    private static final String TAG = "IconCache";
+    private static final String INDEX_FILE_NAME = "index.bin";
+    private static final String ICON_EXTENSION = ".webp";
+    private static final int INDEX_VERSION = 1;
+    private static IconCache instance;
+    private static final Object lock = new Object();
+
+    private final LruCache<Integer, String> memory =
+        new LruCache<Integer, String>(SettingsConstants.ICON_MEMORY_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(Integer packageId, String icon) {
+                // Strings are UTF-16 in the worst case
+                return icon.length() * 2;
+            }
+        };
+
+    // Disk index by package id: content hash (null = none) and last access time
+    private final File directory;
+    private final File indexFile;
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private String[] diskHashes = new String[64];
+    private long[] diskAccess = new long[64];
+    private boolean indexSavePending = false;
+    private long lastCompaction = 0;
+    private int diskHits = 0;
+    private int diskMisses = 0;
+
+    private IconCache(Context context) {
+        this.directory = new File(context.getApplicationContext().getCacheDir(), SettingsConstants.ICON_CACHE_DIR);
+        this.indexFile = new File(directory, INDEX_FILE_NAME);
+        loadIndex();
+    }
+
+    public static IconCache getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new IconCache(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Cached icon of a package as a data URL, or null on a miss. The disk tier
+     * is only used if it holds the icon with expectedHash, the hash the
+     * metadata catalog recorded for the installed version of the package.
+     */
+    public String get(int packageId, String expectedHash) {
+        String icon = memory.get(packageId);
+        if (icon != null || expectedHash == null || expectedHash.isEmpty()) {
+            return icon;
+        }
+
+        byte[] data = readDisk(packageId, expectedHash);
+        if (data == null) {
+            return null;
+        }
+        icon = toDataUrl(data);
+        memory.put(packageId, icon);
+        return icon;
+    }
+
+    /**
+     * Store freshly rendered WebP icon bytes with their content hash in both
+     * tiers and return the icon as a data URL
+     */
+    public String put(int packageId, String hash, byte[] data) {
+        String icon = toDataUrl(data);
+        memory.put(packageId, icon);
+        writeDisk(packageId, hash, data);
+        return icon;
+    }
+
+    /**
+     * Icon file of a package if the disk tier holds the icon with expectedHash, or null
+     */
+    public synchronized File getFile(int packageId, String expectedHash) {
+        if (expectedHash == null || expectedHash.isEmpty()
+                || packageId >= diskHashes.length || !expectedHash.equals(diskHashes[packageId])) {
+            diskMisses++;
+            return null;
+        }
+
+        File file = iconFile(expectedHash);
+        if (!file.exists()) {
+            diskHashes[packageId] = null;
+            diskMisses++;
+            scheduleIndexSave();
+            return null;
+        }
+        diskHits++;
+        diskAccess[packageId] = System.currentTimeMillis();
+        scheduleIndexSave();
+        return file;
+    }
+
+    /**
+     * Store freshly rendered WebP icon bytes in the disk tier only and return
+     * the file, or null if it could not be written
+     */
+    public File store(int packageId, String hash, byte[] data) {
+        return writeDisk(packageId, hash, data) ? iconFile(hash) : null;
+    }
+
+    /**
+     * Drop the icon of a package from both tiers, e.g. after it was updated
+     */
+    public void remove(int packageId) {
+        memory.remove(packageId);
+        synchronized (this) {
+            if (packageId < diskHashes.length && diskHashes[packageId] != null) {
+                diskHashes[packageId] = null;
+                scheduleIndexSave();
+            }
+        }
+    }
+
+    /**
+     * Size and hit/miss/eviction counters of both tiers
+     */
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        // LruCache only guards single calls, take its lock so the numbers belong together
+        synchronized (memory) {
+            stats.put("memoryBytes", memory.size());
+            stats.put("memoryMaxBytes", memory.maxSize());
+            stats.put("memoryEntries", memory.snapshot().size());
+            stats.put("hits", memory.hitCount());
+            stats.put("misses", memory.missCount());
+            stats.put("evictions", memory.evictionCount());
+        }
+        synchronized (this) {
+            long diskBytes = 0;
+            int diskFiles = 0;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(ICON_EXTENSION)) {
+                        diskBytes += file.length();
+                        diskFiles++;
+                    }
+                }
+            }
+            stats.put("diskBytes", diskBytes);
+            stats.put("diskMaxBytes", SettingsConstants.ICON_DISK_CACHE_BYTES);
+            stats.put("diskFiles", diskFiles);
+            stats.put("diskHits", diskHits);
+            stats.put("diskMisses", diskMisses);
+        }
+        Log.d(TAG, "Icon cache stats: " + stats);
+        return stats;
+    }
+
+    /**
+     * Run a compaction on the disk executor if the last one is older than the cleanup interval
+     */
+    public void compactIfNeeded() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - lastCompaction < SettingsConstants.CACHE_CLEANUP_INTERVAL) {
+                return;
+            }
+            lastCompaction = now;
+        }
+        diskExecutor.execute(this::compact);
+    }
+
+    private static String toDataUrl(byte[] data) {
+        return "data:image/webp;base64," + Base64.encodeToString(data, Base64.NO_WRAP);
+    }
+
+    private File iconFile(String hash) {
+        return new File(directory, hash + ICON_EXTENSION);
+    }
+
+    private synchronized byte[] readDisk(int packageId, String expectedHash) {
+        if (packageId >= diskHashes.length || !expectedHash.equals(diskHashes[packageId])) {
+            diskMisses++;
+            return null;
+        }
+
+        File file = iconFile(expectedHash);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            diskHits++;
+            diskAccess[packageId] = System.currentTimeMillis();
+            scheduleIndexSave();
+            return data;
+        } catch (IOException e) {
+            // Deleted behind our back (the system may clear the cache directory)
+            Log.w(TAG, "Icon file missing for package " + packageId + ": " + e.getMessage());
+            diskHashes[packageId] = null;
+            diskMisses++;
+            scheduleIndexSave();
+            return null;
+        }
+    }
+
+    private synchronized boolean writeDisk(int packageId, String hash, byte[] data) {
+        File file = iconFile(hash);
+        try {
+            // Content-addressed, an existing file already holds these bytes
+            if (!file.exists()) {
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Could not create " + directory);
+                }
+                File tempFile = new File(directory, hash + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                    out.write(data);
+                }
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Could not move icon file into place");
+                }
+            }
+
+            if (packageId >= diskHashes.length) {
+                int newCapacity = Math.max(packageId + 1, diskHashes.length * 2);
+                diskHashes = Arrays.copyOf(diskHashes, newCapacity);
+                diskAccess = Arrays.copyOf(diskAccess, newCapacity);
+            }
+            diskHashes[packageId] = hash;
+            diskAccess[packageId] = System.currentTimeMillis();
+            scheduleIndexSave();
+            compactIfNeeded();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing icon for package " + packageId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete files no package refers to (including the old per-package text
+     * files), then drop the least recently used packages until the icon files
+     * fit the disk budget. A file is deleted once no package refers to it.
+     */
+    private void compact() {
+        try {
+            synchronized (this) {
+                Map<String, Long> sizes = new HashMap<>();
+                Map<String, Integer> references = new HashMap<>();
+                long totalBytes = 0;
+                for (int id = 0; id < diskHashes.length; id++) {
+                    String hash = diskHashes[id];
+                    if (hash == null) {
+                        continue;
+                    }
+                    Integer count = references.get(hash);
+                    references.put(hash, count != null ? count + 1 : 1);
+                    if (count == null) {
+                        long size = iconFile(hash).length();
+                        sizes.put(hash, size);
+                        totalBytes += size;
+                    }
+                }
+
+                int deleted = 0;
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        String name = file.getName();
+                        boolean referenced = name.endsWith(ICON_EXTENSION)
+                            && references.containsKey(name.substring(0, name.length() - ICON_EXTENSION.length()));
+                        if (!referenced && !name.equals(INDEX_FILE_NAME) && file.delete()) {
+                            deleted++;
+                        }
+                    }
+                }
+
+                // Oldest access first
+                Integer[] order = new Integer[diskHashes.length];
+                for (int id = 0; id < order.length; id++) {
+                    order[id] = id;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(diskAccess[a], diskAccess[b]));
+
+                int evicted = 0;
+                for (int i = 0; i < order.length && totalBytes > SettingsConstants.ICON_DISK_CACHE_BYTES; i++) {
+                    int id = order[i];
+                    String hash = diskHashes[id];
+                    if (hash == null) {
+                        continue;
+                    }
+                    diskHashes[id] = null;
+                    evicted++;
+                    int remaining = references.get(hash) - 1;
+                    references.put(hash, remaining);
+                    if (remaining == 0 && iconFile(hash).delete()) {
+                        totalBytes -= sizes.get(hash);
+                        deleted++;
+                    }
+                }
+
+                if (evicted > 0) {
+                    scheduleIndexSave();
+                }
+                Log.d(TAG, "Compacted icon store: " + deleted + " files deleted, " + evicted
+                    + " packages evicted, " + totalBytes + " bytes kept");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error compacting icon store", e);
+        }
+    }
+
+    private void loadIndex() {
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            Set<String> missing = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                int id = in.readInt();
+                String hash = in.readUTF();
+                long access = in.readLong();
+                if (missing.contains(hash) || !iconFile(hash).exists()) {
+                    missing.add(hash);
+                    continue;
+                }
+                if (id >= diskHashes.length) {
+                    int newCapacity = Math.max(id + 1, diskHashes.length * 2);
+                    diskHashes = Arrays.copyOf(diskHashes, newCapacity);
+                    diskAccess = Arrays.copyOf(diskAccess, newCapacity);
+                }
+                diskHashes[id] = hash;
+                diskAccess[id] = access;
+            }
+            Log.d(TAG, "Loaded icon index with " + (count - missing.size()) + " entries");
+        } catch (IOException e) {
+            // The index is only a cache, unreferenced files go with the next compaction
+            Log.e(TAG, "Error loading icon index", e);
+            Arrays.fill(diskHashes, null);
+        }
+    }
+
+    /**
+     * Coalesce index changes into one write on the disk executor
+     */
+    private synchronized void scheduleIndexSave() {
+        if (indexSavePending) {
+            return;
+        }
+        indexSavePending = true;
+        diskExecutor.execute(this::saveIndex);
+    }
+
+    private synchronized void saveIndex() {
+        indexSavePending = false;
+        int count = 0;
+        for (String hash : diskHashes) {
+            if (hash != null) {
+                count++;
+            }
+        }
+
+        File tempFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(count);
+                for (int id = 0; id < diskHashes.length; id++) {
+                    if (diskHashes[id] != null) {
+                        out.writeInt(id);
+                        out.writeUTF(diskHashes[id]);
+                        out.writeLong(diskAccess[id]);
+                    }
+                }
+            }
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException("Could not move icon index into place");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving icon index", e);
+        }
+    }
+}
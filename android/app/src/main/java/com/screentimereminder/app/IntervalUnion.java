@@ -0,0 +1,136 @@
+package com.screentimereminder.app;
+
+import java.util.Arrays;
+
+/**
+ * Collects time intervals and measures the length of their union.
+ * Overlapping sessions (split-screen, picture-in-picture, two apps resumed
+ * at once) are counted once, so the result is real screen time rather than
+ * the sum of per-app times. The total is computed with a sweep over the
+ * sorted interval endpoints in O(n log n).
+ */
+public class IntervalUnion {
+    private long[] starts = new long[64];
+    private long[] ends = new long[64];
+    private int size = 0;
+
+    /**
+     * Add the interval [start, end); empty intervals are ignored
+     */
+    public void add(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    public long getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Length of the union of all intervals
+     */
+    public long total() {
+        return total(null);
+    }
+
+    /**
+     * Length of the union of all intervals plus extra, which is read but not kept.
+     * Extra may be null.
+     */
+    public long total(IntervalUnion extra) {
+        int extraSize = extra != null ? extra.size : 0;
+        int count = size + extraSize;
+        if (count == 0) {
+            return 0;
+        }
+
+        long[] sortedStarts = Arrays.copyOf(starts, count);
+        long[] sortedEnds = Arrays.copyOf(ends, count);
+        if (extraSize > 0) {
+            System.arraycopy(extra.starts, 0, sortedStarts, size, extraSize);
+            System.arraycopy(extra.ends, 0, sortedEnds, size, extraSize);
+        }
+        Arrays.sort(sortedStarts);
+        Arrays.sort(sortedEnds);
+
+        // Sweep the endpoints in order, tracking how many intervals are open
+        long total = 0;
+        long coveredSince = 0;
+        int open = 0;
+        int s = 0;
+        int e = 0;
+        while (s < count) {
+            if (sortedStarts[s] < sortedEnds[e]) {
+                if (open++ == 0) {
+                    coveredSince = sortedStarts[s];
+                }
+                s++;
+            } else {
+                if (--open == 0) {
+                    total += sortedEnds[e] - coveredSince;
+                }
+                e++;
+            }
+        }
+        // All starts seen, the union ends with the last end
+        total += sortedEnds[count - 1] - coveredSince;
+        return total;
+    }
+
+    /**
+     * Replace the intervals by their disjoint union, keeping memory and
+     * later sweeps proportional to the covered ranges instead of the sessions.
+     */
+    public void compact() {
+        if (size < 2) {
+            return;
+        }
+
+        long[] sortedStarts = Arrays.copyOf(starts, size);
+        long[] sortedEnds = Arrays.copyOf(ends, size);
+        Arrays.sort(sortedStarts);
+        Arrays.sort(sortedEnds);
+
+        int merged = 0;
+        int open = 0;
+        int s = 0;
+        int e = 0;
+        long coveredSince = 0;
+        while (e < size) {
+            if (s < size && sortedStarts[s] <= sortedEnds[e]) {
+                if (open++ == 0) {
+                    coveredSince = sortedStarts[s];
+                }
+                s++;
+            } else {
+                if (--open == 0) {
+                    starts[merged] = coveredSince;
+                    ends[merged] = sortedEnds[e];
+                    merged++;
+                }
+                e++;
+            }
+        }
+        size = merged;
+    }
+}
@@ -18,6 +18,8 @@ public class NotificationService {
     private static final String CHANNEL_ID = "screen-time-alerts";
     private static final String CHANNEL_NAME = "Screen Time Alerts";
     private static final String CHANNEL_DESCRIPTION = "Notifications for screen time limits";
+    // Limit alerts are told apart by their tag, see showAppLimitNotification
+    private static final int APP_LIMIT_NOTIFICATION_ID = 100;
     
     private final Context context;
     private final NotificationManager notificationManager;
@@ -102,6 +104,41 @@ public class NotificationService {
         Log.d(TAG, "Limit reached notification sent");
     }
     
+    /**
+     * Per-app or group limit alert. The tag identifies the limit, so each one
+     * replaces its own earlier alert and never an untagged notification.
+     */
+    public void showAppLimitNotification(String tag, String label, int usedMinutes, int limitMinutes,
+            boolean reached) {
+        Intent intent = new Intent(context, BridgeActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            0,
+            intent,
+            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
+        );
+        
+        String text = reached
+            ? String.format("%s: %d minutes used today\nDaily limit: %d minutes\nYou have reached the limit!",
+                label, usedMinutes, limitMinutes)
+            : String.format("%s: %d minutes used today\nDaily limit: %d minutes\n%d minutes remaining",
+                label, usedMinutes, limitMinutes, Math.max(0, limitMinutes - usedMinutes));
+        
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(R.drawable.ic_stat_screen_time)
+            .setContentTitle(reached ? "App Limit Reached" : "App Limit Approaching")
+            .setContentText(text)
+            .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setAutoCancel(true)
+            .setContentIntent(pendingIntent);
+        
+        notificationManager.notify(tag, APP_LIMIT_NOTIFICATION_ID, builder.build());
+        Log.d(TAG, "App limit notification sent for " + label);
+    }
+    
     public void cancelAllNotifications() {
         notificationManager.cancelAll();
         Log.d(TAG, "All notifications cancelled");
@@ -0,0 +1,268 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide package-name dictionary.
+ * Each package name is interned once and given a small int id, so aggregation
+ * and state tables can be plain arrays indexed by id instead of string maps.
+ * Names are appended to a file under a file lock, which keeps ids stable across
+ * restarts and identical between the app and the :background process.
+ * The system-app classification is cached per id: readers never take the
+ * dictionary lock, the first miss fills the cache for every installed app from
+ * one getInstalledApplications call, and entries are dropped when a package
+ * is added, removed or replaced.
+ */
+public class PackageDictionary {
+    private static final String TAG = "PackageDictionary";
+    private static final String FILE_NAME = "package_dictionary.txt";
+    private static PackageDictionary instance;
+    private static final Object lock = new Object();
+
+    // Cached classification per id
+    private static final byte FLAG_RESOLVED = 1;
+    private static final byte FLAG_SYSTEM = 2;
+
+    private final Context context;
+    private final File file;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    // Replaced on growth; writers hold flagsLock, readers only read the reference
+    private volatile byte[] flags = new byte[64];
+    private final Object flagsLock = new Object();
+    private volatile boolean classificationsLoaded = false;
+    private long loadedBytes = 0;
+    private final int ownPackageId;
+
+    private PackageDictionary(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(this.context.getFilesDir(), FILE_NAME);
+        synchronized (this) {
+            syncWithFile(null);
+        }
+        this.ownPackageId = intern(this.context.getPackageName());
+        Log.d(TAG, "Loaded " + names.size() + " packages");
+    }
+
+    public static PackageDictionary getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new PackageDictionary(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Get the id for a package name, assigning and persisting a new one if needed
+     */
+    public synchronized int intern(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        return syncWithFile(packageName);
+    }
+
+    /**
+     * Id of an already interned package name, or -1
+     */
+    public synchronized int getId(String packageName) {
+        Integer id = ids.get(packageName);
+        return id != null ? id : -1;
+    }
+
+    public synchronized String getPackageName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Number of ids assigned so far (upper bound for id-indexed arrays)
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    public boolean isOwnPackage(int id) {
+        return id == ownPackageId;
+    }
+
+    /**
+     * Memoized AppUsageTracker.isSystemApp for the given id.
+     * Lock-free on a hit; a miss resolves outside the dictionary lock.
+     */
+    public boolean isSystemApp(int id) {
+        byte[] current = flags;
+        if (id < current.length && (current[id] & FLAG_RESOLVED) != 0) {
+            return (current[id] & FLAG_SYSTEM) != 0;
+        }
+
+        // Apps in the persisted catalog need no PackageManager call
+        AppMetadataCatalog.Entry entry = AppMetadataCatalog.getInstance(context).peek(id);
+        if (entry != null) {
+            setClassification(id, entry.system);
+            return entry.system;
+        }
+
+        if (!classificationsLoaded) {
+            loadClassifications();
+            current = flags;
+            if (id < current.length && (current[id] & FLAG_RESOLVED) != 0) {
+                return (current[id] & FLAG_SYSTEM) != 0;
+            }
+        }
+
+        // Not installed when the cache was filled (or installed since), ask for this one package
+        boolean isSystem = AppUsageTracker.isSystemApp(context, getPackageName(id));
+        setClassification(id, isSystem);
+        return isSystem;
+    }
+
+    /**
+     * Fill the cache for every installed app from a single PackageManager call
+     */
+    public void loadClassifications() {
+        List<ApplicationInfo> installed;
+        try {
+            installed = context.getPackageManager().getInstalledApplications(0);
+        } catch (Exception e) {
+            // Large package lists can exceed the binder limit, fall back to lookups per package
+            Log.e(TAG, "Error listing installed applications", e);
+            classificationsLoaded = true;
+            return;
+        }
+
+        int count = 0;
+        for (ApplicationInfo appInfo : installed) {
+            Integer id;
+            synchronized (this) {
+                id = ids.get(appInfo.packageName);
+            }
+            // Only cache packages we have seen, interning the whole list would grow the dictionary file
+            if (id != null) {
+                setClassification(id, AppUsageTracker.isSystemApp(context, appInfo));
+                count++;
+            }
+        }
+        classificationsLoaded = true;
+        Log.d(TAG, "Classified " + count + " of " + installed.size() + " installed packages");
+    }
+
+    /**
+     * Drop the cached classification and catalog entry of a package after it was
+     * added, removed or replaced. The catalog entry goes first: classification is
+     * re-resolved from the catalog, so dropping the flags first would let a reader
+     * in between restore them from the stale entry.
+     */
+    public void invalidate(String packageName) {
+        Integer id;
+        synchronized (this) {
+            id = ids.get(packageName);
+        }
+        if (id == null) {
+            return;
+        }
+        AppMetadataCatalog.getInstance(context).invalidate(packageName);
+        synchronized (flagsLock) {
+            if (id < flags.length) {
+                flags[id] = 0;
+            }
+        }
+        Log.d(TAG, "Invalidated classification of " + packageName);
+    }
+
+    private void setClassification(int id, boolean isSystem) {
+        synchronized (flagsLock) {
+            byte[] current = flags;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+            }
+            current[id] = (byte) (FLAG_RESOLVED | (isSystem ? FLAG_SYSTEM : 0));
+            // Volatile write publishes the entry (and a grown array) to readers
+            flags = current;
+        }
+    }
+
+    /**
+     * The tracking filter shared by every surface: not our own app and not a system app
+     */
+    public boolean isTracked(int id) {
+        return !isOwnPackage(id) && !isSystemApp(id);
+    }
+
+    /**
+     * Read entries appended by other processes and, if packageName is still
+     * unknown afterwards, append it. Returns the id of packageName (or -1 when null).
+     */
+    private int syncWithFile(String packageName) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel();
+             FileLock fileLock = channel.lock()) {
+            readNewEntries(raf);
+
+            if (packageName == null) {
+                return -1;
+            }
+            Integer id = ids.get(packageName);
+            if (id == null) {
+                raf.seek(raf.length());
+                raf.write((packageName + "\n").getBytes(StandardCharsets.UTF_8));
+                loadedBytes = raf.length();
+                id = add(packageName);
+            }
+            return id;
+        } catch (IOException e) {
+            Log.e(TAG, "Error syncing package dictionary", e);
+            // Keep working in memory; the id just won't survive a restart
+            return packageName != null ? add(packageName) : -1;
+        }
+    }
+
+    private void readNewEntries(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        if (length <= loadedBytes) {
+            return;
+        }
+
+        byte[] data = new byte[(int) (length - loadedBytes)];
+        raf.seek(loadedBytes);
+        raf.readFully(data);
+
+        // Only consume complete lines
+        int lineStart = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                if (i > lineStart) {
+                    String name = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    if (!ids.containsKey(name)) {
+                        add(name);
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        loadedBytes += lineStart;
+    }
+
+    private int add(String packageName) {
+        int id = names.size();
+        names.add(packageName);
+        ids.put(packageName, id);
+        return id;
+    }
+}
@@ -0,0 +1,127 @@
+package com.screentimereminder.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide screen state used to gate every periodic task.
+ * Usage cannot change while the screen is off, so listeners pause their
+ * polling on screen-off. On screen-on the coordinator runs one catch-up
+ * refresh of the aggregation engine (an incremental query from the event
+ * watermark) and then resumes the listeners, whose first tick reuses that
+ * snapshot instead of querying again.
+ */
+public class ScreenStateCoordinator {
+    private static final String TAG = "ScreenStateCoordinator";
+    private static ScreenStateCoordinator instance;
+    private static final Object lock = new Object();
+
+    private final Context context;
+    private final List<ScreenStateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService catchUpExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean interactive;
+
+    /**
+     * Called on the main thread when periodic work should stop or start again
+     */
+    public interface ScreenStateListener {
+        void onScreenOff();
+
+        void onScreenOn();
+    }
+
+    private final BroadcastReceiver screenStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                setInteractive(false);
+            } else if (Intent.ACTION_SCREEN_ON.equals(action) || Intent.ACTION_USER_PRESENT.equals(action)) {
+                // USER_PRESENT only matters if SCREEN_ON was missed, setInteractive ignores repeats
+                setInteractive(true);
+            }
+        }
+    };
+
+    private ScreenStateCoordinator(Context context) {
+        this.context = context.getApplicationContext();
+        PowerManager powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+        this.interactive = powerManager == null || powerManager.isInteractive();
+
+        // System broadcasts, only deliverable to receivers registered at runtime
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        this.context.registerReceiver(screenStateReceiver, filter);
+    }
+
+    public static ScreenStateCoordinator getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new ScreenStateCoordinator(context);
+            }
+            return instance;
+        }
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    public void addListener(ScreenStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ScreenStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void setInteractive(boolean newInteractive) {
+        if (interactive == newInteractive) {
+            return;
+        }
+        interactive = newInteractive;
+        Log.d(TAG, newInteractive ? "Screen on, resuming periodic tasks" : "Screen off, pausing periodic tasks");
+
+        if (!newInteractive) {
+            for (ScreenStateListener listener : listeners) {
+                try {
+                    listener.onScreenOff();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error pausing listener", e);
+                }
+            }
+            return;
+        }
+
+        // One catch-up query from the watermark, then resume everyone on the main thread
+        catchUpExecutor.execute(() -> {
+            UsageAggregationEngine.getInstance(context).refresh();
+            mainHandler.post(() -> {
+                if (!interactive) {
+                    return;
+                }
+                for (ScreenStateListener listener : listeners) {
+                    try {
+                        listener.onScreenOn();
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error resuming listener", e);
+                    }
+                }
+            });
+        });
+    }
+}
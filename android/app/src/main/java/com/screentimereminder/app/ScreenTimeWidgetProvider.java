@@ -286,7 +286,12 @@ public class ScreenTimeWidgetProvider extends AppWidgetProvider {
     }
 
     private float getTodayScreenTime(Context context) {
-        return AppUsageTracker.calculateScreenTime(context);
+        float totalMinutes = UsageAggregationEngine.getInstance(context).getTodayScreenTimeMinutes();
+        if (totalMinutes < 0) {
+            // Engine has no data yet, fall back to the full calculation
+            return AppUsageTracker.calculateScreenTime(context);
+        }
+        return totalMinutes;
     }
 
     private String formatTime(float minutes) {
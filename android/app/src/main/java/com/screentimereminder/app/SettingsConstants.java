@@ -36,6 +36,8 @@ public class SettingsConstants {
     public static final String ACTION_REFRESH_WIDGET = "com.screentimereminder.app.REFRESH_WIDGET";
     public static final String ACTION_BACKGROUND_DETECTED = "com.screentimereminder.app.BACKGROUND_DETECTED";
     public static final String ACTION_RESTART_SERVICE = "com.screentimereminder.app.RESTART_SERVICE";
+    public static final String ACTION_LIMIT_ALARM = "com.screentimereminder.app.LIMIT_ALARM";
+    public static final String ACTION_DAY_ROLLOVER = "com.screentimereminder.app.DAY_ROLLOVER";
 
     // Notification IDs
     public static final int NOTIFICATION_ID_LIMIT_REACHED = 1;
@@ -58,10 +60,18 @@ public class SettingsConstants {
 
     // Service constants
     public static final int SERVICE_RESTART_ALARM_ID = 1001;
+    public static final int LIMIT_ALARM_ID = 1002;
+    public static final int DAY_ROLLOVER_ALARM_ID = 1003;
+    public static final long MAX_LIMIT_ALARM_HORIZON = 900000; // 15 minutes, re-plan for app switches while the screen is on
+    public static final long MIN_LIMIT_ALARM_SLACK = 60000; // 1 minute, most a crossing after an app switch can be late
 
     // Cache settings
     public static final String ICON_CACHE_DIR = "icon_cache";
     public static final int MAX_CACHED_ICONS = 100;
+    public static final int ICON_MEMORY_CACHE_BYTES = 4 * 1024 * 1024; // 4 MB of data URLs
+    public static final long ICON_DISK_CACHE_BYTES = 8 * 1024 * 1024; // 8 MB of WebP files
+    public static final int MAX_ATLAS_ICONS = 256; // 16x16 cells, a 2304px square atlas
+    public static final int MAX_ICON_ATLASES = 8;
 
     // Battery-aware update intervals
     public static final long NORMAL_UPDATE_INTERVAL = 60000; // 1 minute
@@ -0,0 +1,545 @@
+package com.screentimereminder.app;
+
+import android.app.usage.UsageStats;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide owner of "how much was each app used today".
+ * All surfaces (plugin, services, widget) read today's totals from here so
+ * they share one incremental query, one set of filters and one result.
+ */
+public class UsageAggregationEngine {
+    private static final String TAG = "UsageAggregationEngine";
+    private static final long MIN_REFRESH_INTERVAL = 5000; // 5 seconds
+    private static final int SHARD_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final long SHARD_THREAD_KEEP_ALIVE = 30; // seconds
+    private static UsageAggregationEngine instance;
+    private static final Object lock = new Object();
+
+    private final Context context;
+    private final UsageStatsManager usageStatsManager;
+    private final PackageDictionary dictionary;
+    private final UsageEventBuffer eventBuffer;
+    // Scan buffers for everything but the cursor, one per thread so day shards query in parallel
+    private final ThreadLocal<UsageEventBuffer> scanBuffers;
+    private final UsageEventCursor cursor;
+    private final UsageHistoryStore historyStore;
+    private final DayBoundary dayBoundary;
+    private final ThreadPoolExecutor shardExecutor;
+    private Snapshot lastSnapshot;
+
+    /**
+     * Callback for scanEvents. The buffer is only valid for the duration of the call.
+     */
+    public interface EventVisitor {
+        void visit(UsageEventBuffer buffer, int count);
+    }
+
+    /**
+     * Immutable view of today's usage at a point in time
+     */
+    public static class Snapshot {
+        private final long dayStart;
+        private final long timestamp;
+        private final long totalTimeMs;
+        private final boolean foreground;
+        private final Map<String, Long> appTimes;
+        private final Map<String, Long> lastUsed;
+        private final Map<String, long[]> hourlyTimes;
+
+        Snapshot(long dayStart, long timestamp, long totalTimeMs, boolean foreground, Map<String, Long> appTimes,
+                Map<String, Long> lastUsed, Map<String, long[]> hourlyTimes) {
+            this.dayStart = dayStart;
+            this.timestamp = timestamp;
+            this.totalTimeMs = totalTimeMs;
+            this.foreground = foreground;
+            this.appTimes = Collections.unmodifiableMap(appTimes);
+            this.lastUsed = Collections.unmodifiableMap(lastUsed);
+            this.hourlyTimes = Collections.unmodifiableMap(hourlyTimes);
+        }
+
+        public long getDayStart() {
+            return dayStart;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Screen time of the day: the union of all app sessions, which can be
+         * less than the sum of the app times when apps were visible together
+         */
+        public long getTotalTimeMs() {
+            return totalTimeMs;
+        }
+
+        /**
+         * Whether a tracked app was in the foreground, i.e. the total was still growing
+         */
+        public boolean isForeground() {
+            return foreground;
+        }
+
+        public float getTotalMinutes() {
+            return totalTimeMs / 60000f;
+        }
+
+        public Map<String, Long> getAppTimes() {
+            return appTimes;
+        }
+
+        public Map<String, Long> getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Per-app foreground milliseconds for each hour of the day (24 entries).
+         * The arrays are shared; callers must not modify them.
+         */
+        public Map<String, long[]> getHourlyTimes() {
+            return hourlyTimes;
+        }
+
+        /**
+         * Foreground milliseconds of one app in the hours [startHour, endHour)
+         */
+        public long getTimeInHours(String packageName, int startHour, int endHour) {
+            long[] hours = hourlyTimes.get(packageName);
+            if (hours == null) {
+                return 0;
+            }
+            long total = 0;
+            for (int hour = Math.max(0, startHour); hour < Math.min(hours.length, endHour); hour++) {
+                total += hours[hour];
+            }
+            return total;
+        }
+    }
+
+    private UsageAggregationEngine(Context context) {
+        this.context = context.getApplicationContext();
+        this.usageStatsManager = (UsageStatsManager) this.context.getSystemService(Context.USAGE_STATS_SERVICE);
+        this.dictionary = PackageDictionary.getInstance(this.context);
+        this.eventBuffer = new UsageEventBuffer(dictionary);
+        final PackageDictionary scanDictionary = dictionary;
+        this.scanBuffers = new ThreadLocal<UsageEventBuffer>() {
+            @Override
+            protected UsageEventBuffer initialValue() {
+                return new UsageEventBuffer(scanDictionary);
+            }
+        };
+        this.cursor = new UsageEventCursor(this.context, eventBuffer);
+        this.historyStore = UsageHistoryStore.getInstance(this.context);
+        this.dayBoundary = DayBoundary.getInstance(this.context);
+
+        // Bounded pool for day shards, threads exit when idle
+        this.shardExecutor = new ThreadPoolExecutor(SHARD_THREADS, SHARD_THREADS,
+            SHARD_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.shardExecutor.allowCoreThreadTimeOut(true);
+
+        // Roll over once at midnight instead of on the first query of the new day
+        this.dayBoundary.addListener((previousDayStart, newDayStart) -> shardExecutor.execute(this::refresh));
+    }
+
+    public static UsageAggregationEngine getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new UsageAggregationEngine(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * The single filter used by every surface: skip our own app and system apps
+     */
+    public static boolean isTrackedPackage(Context context, String packageName) {
+        PackageDictionary dictionary = PackageDictionary.getInstance(context);
+        return dictionary.isTracked(dictionary.intern(packageName));
+    }
+
+    /**
+     * Bring today's totals up to date and return them.
+     * Calls within MIN_REFRESH_INTERVAL of each other share the same snapshot.
+     * Returns the last known snapshot (possibly null) if the query fails.
+     */
+    public synchronized Snapshot refresh() {
+        long now = System.currentTimeMillis();
+        long dayStart = dayBoundary.getDayStart();
+
+        if (lastSnapshot != null && lastSnapshot.getDayStart() == dayStart
+                && now - lastSnapshot.getTimestamp() < MIN_REFRESH_INTERVAL) {
+            return lastSnapshot;
+        }
+
+        if (usageStatsManager == null) {
+            Log.e(TAG, "UsageStatsManager is null");
+            return lastSnapshot;
+        }
+
+        try {
+            if (cursor.getDayStart() != dayStart) {
+                rollover(dayStart);
+            }
+            cursor.advance(usageStatsManager, dayStart, now);
+
+            Map<String, Long> appTimes = new HashMap<>();
+            Map<String, Long> lastUsed = new HashMap<>();
+            Map<String, long[]> hourlyTimes = new HashMap<>();
+            long totalTimeMs = cursor.snapshot(now, appTimes, lastUsed, hourlyTimes);
+
+            lastSnapshot = new Snapshot(dayStart, now, totalTimeMs, cursor.getOpenCount() > 0,
+                appTimes, lastUsed, hourlyTimes);
+            Log.d(TAG, String.format("Refreshed today's usage: %.2f minutes across %d apps",
+                lastSnapshot.getTotalMinutes(), appTimes.size()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error refreshing usage", e);
+        }
+        return lastSnapshot;
+    }
+
+    /**
+     * Move the cursor to a new day. When the day just ended, its totals come
+     * straight from the cursor (with sessions split at midnight) and are frozen
+     * into the history store; otherwise the last tracked day is frozen from a query.
+     */
+    private void rollover(long dayStart) {
+        long previousDayStart = cursor.getDayStart();
+        Map<String, Long> appTimes = new HashMap<>();
+        Map<String, Long> lastUsed = new HashMap<>();
+        long screenTimeMs = cursor.rollover(usageStatsManager, dayStart, appTimes, lastUsed);
+        if (screenTimeMs >= 0) {
+            if (historyStore.load(previousDayStart) == null) {
+                historyStore.save(previousDayStart, appTimes, lastUsed, screenTimeMs);
+            }
+        } else if (previousDayStart > 0 && previousDayStart < dayStart) {
+            getFinishedDay(previousDayStart, DayBoundary.getNextDayStart(previousDayStart));
+        }
+    }
+
+    /**
+     * Timestamp of the newest event folded into today's totals.
+     * Changes whenever refresh() sees new events, so callers can use it to invalidate caches.
+     */
+    public long getWatermark() {
+        return cursor.getWatermark();
+    }
+
+    /**
+     * Today's foreground time of one package id in milliseconds, as of the last refresh.
+     * Reads the cursor's per-app counter, so it costs O(1) once refresh() has run.
+     */
+    public long getAppTimeMs(int packageId) {
+        Snapshot snapshot = refresh();
+        return cursor.getAppTime(packageId, snapshot != null ? snapshot.getTimestamp() : System.currentTimeMillis());
+    }
+
+    /**
+     * Whether a package id was in the foreground at the last refresh
+     */
+    public boolean isAppOpen(int packageId) {
+        return cursor.isOpen(packageId);
+    }
+
+    /**
+     * Start of a package id's foreground session at the last refresh, or 0 if it is not open
+     */
+    public long getAppOpenSince(int packageId) {
+        return cursor.getOpenSince(packageId);
+    }
+
+    /**
+     * Today's total screen time in minutes, or -1 if it could not be computed
+     */
+    public float getTodayScreenTimeMinutes() {
+        Snapshot snapshot = refresh();
+        return snapshot != null ? snapshot.getTotalMinutes() : -1f;
+    }
+
+    /**
+     * Per-app foreground time in milliseconds for an arbitrary window, using the
+     * same filters as today's totals. Today's window is served from the cursor.
+     */
+    public Map<String, Long> aggregateRange(long startTime, long endTime) {
+        Map<String, Long> appTimes = new HashMap<>();
+        aggregateSessions(startTime, endTime, appTimes, new HashMap<>(), null);
+        return appTimes;
+    }
+
+    /**
+     * Rebuild the sessions of [startTime, endTime) from one event query and add
+     * the per-app times into the given maps. Apps already in the foreground at
+     * startTime are counted from there, sessions still open are closed at the
+     * end of the window. The window's screen time (the union of its sessions)
+     * is added to screenTimeOut[0] if it is not null.
+     * Returns the number of events read, or -1 on failure. Today's window is
+     * answered by the cursor and returns 1 even when no app was used yet, so
+     * callers don't fall back to daily stats that may include yesterday.
+     */
+    private int aggregateSessions(long startTime, long endTime,
+            Map<String, Long> timesOut, Map<String, Long> lastUsedOut, long[] screenTimeOut) {
+        long now = System.currentTimeMillis();
+        if (startTime == dayBoundary.getDayStart() && endTime >= now - MIN_REFRESH_INTERVAL) {
+            Snapshot snapshot = refresh();
+            if (snapshot != null) {
+                addInto(snapshot.getAppTimes(), snapshot.getLastUsed(), timesOut, lastUsedOut);
+                if (screenTimeOut != null) {
+                    screenTimeOut[0] += snapshot.getTotalTimeMs();
+                }
+                return 1;
+            }
+        }
+
+        long windowEnd = Math.min(endTime, now);
+        return scanEvents(startTime, endTime, (buffer, count) -> {
+            int packageCount = buffer.getPackageCount();
+            long[] totals = new long[packageCount];
+            long[] lastUsed = new long[packageCount];
+            IntervalUnion screenIntervals = new IntervalUnion();
+            UsageSessionEngine.SessionSink sink = (id, start, end) -> {
+                totals[id] += end - start;
+                lastUsed[id] = Math.max(lastUsed[id], end);
+                screenIntervals.add(start, end);
+            };
+
+            UsageSessionEngine sessions = new UsageSessionEngine(dictionary);
+            sessions.reset(startTime, true);
+            sessions.process(buffer, count, sink);
+            sessions.closeAll(windowEnd, sink);
+
+            Map<String, Long> windowTimes = new HashMap<>();
+            Map<String, Long> windowLastUsed = new HashMap<>();
+            for (int id = 0; id < packageCount; id++) {
+                if (totals[id] > 0) {
+                    String packageName = buffer.getPackageName(id);
+                    windowTimes.put(packageName, totals[id]);
+                    windowLastUsed.put(packageName, lastUsed[id]);
+                }
+            }
+            addInto(windowTimes, windowLastUsed, timesOut, lastUsedOut);
+            if (screenTimeOut != null) {
+                screenTimeOut[0] += screenIntervals.total();
+            }
+        });
+    }
+
+    /**
+     * Usage of one day shard of a range
+     */
+    private static class ShardResult {
+        final Map<String, Long> appTimes = new HashMap<>();
+        final Map<String, Long> lastUsed = new HashMap<>();
+        final long[] screenTime = new long[1];
+        boolean available;
+    }
+
+    /**
+     * Per-app foreground time in milliseconds for [startTime, endTime), adding into
+     * the given maps. The range is split into day shards: finished days that lie
+     * fully inside it come from the history store (computed and frozen on first
+     * use), partial days and today are aggregated live. Shards run in parallel on
+     * a pool sized to the device's cores, each with its own event buffer and
+     * session state, and are summed on the calling thread afterwards.
+     * The range's screen time is added to screenTimeOut[0] if it is not null;
+     * shards don't overlap, so it is the sum of their unions.
+     * Returns false if no source could answer.
+     */
+    public boolean aggregateHistoryRange(long startTime, long endTime,
+            Map<String, Long> timesOut, Map<String, Long> lastUsedOut, long[] screenTimeOut) {
+        long todayStart = dayBoundary.getDayStart();
+
+        // Split into shards of at most one day: {start, end, finished}
+        List<long[]> shards = new ArrayList<>();
+        long windowStart = startTime;
+        while (windowStart < endTime) {
+            long dayStart = DayBoundary.getStartOfDay(windowStart);
+            long dayEnd = DayBoundary.getNextDayStart(dayStart);
+            long windowEnd = Math.min(endTime, dayEnd);
+            boolean finished = windowStart == dayStart && dayEnd <= endTime && dayEnd <= todayStart;
+            shards.add(new long[] {windowStart, windowEnd, finished ? 1 : 0});
+            windowStart = windowEnd;
+        }
+
+        if (shards.size() == 1) {
+            long[] shard = shards.get(0);
+            ShardResult result = aggregateShard(shard[0], shard[1], shard[2] == 1);
+            addInto(result.appTimes, result.lastUsed, timesOut, lastUsedOut);
+            if (screenTimeOut != null) {
+                screenTimeOut[0] += result.screenTime[0];
+            }
+            return result.available;
+        }
+
+        List<Future<ShardResult>> futures = new ArrayList<>(shards.size());
+        for (long[] shard : shards) {
+            futures.add(shardExecutor.submit(() -> aggregateShard(shard[0], shard[1], shard[2] == 1)));
+        }
+
+        boolean available = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ShardResult result = futures.get(i).get();
+                addInto(result.appTimes, result.lastUsed, timesOut, lastUsedOut);
+                if (screenTimeOut != null) {
+                    screenTimeOut[0] += result.screenTime[0];
+                }
+                available |= result.available;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error aggregating shard starting at " + shards.get(i)[0], e.getCause());
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted while aggregating shards", e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return available;
+    }
+
+    private ShardResult aggregateShard(long startTime, long endTime, boolean finishedDay) {
+        ShardResult result = new ShardResult();
+        if (finishedDay) {
+            UsageHistoryStore.DayRollup rollup = getFinishedDay(startTime, endTime);
+            addInto(rollup.getAppTimes(), rollup.getLastUsed(), result.appTimes, result.lastUsed);
+            result.screenTime[0] = rollup.getScreenTimeMs();
+            result.available = true;
+        } else {
+            result.available = aggregateWindow(startTime, endTime, result.appTimes, result.lastUsed,
+                result.screenTime);
+        }
+        return result;
+    }
+
+    /**
+     * Rollup of a finished day, served from the history store or computed once and frozen
+     */
+    public UsageHistoryStore.DayRollup getFinishedDay(long dayStart, long dayEnd) {
+        UsageHistoryStore.DayRollup rollup = historyStore.load(dayStart);
+        if (rollup != null) {
+            return rollup;
+        }
+
+        Map<String, Long> appTimes = new HashMap<>();
+        Map<String, Long> lastUsed = new HashMap<>();
+        long[] screenTime = new long[1];
+        if (!aggregateWindow(dayStart, dayEnd, appTimes, lastUsed, screenTime) && appTimes.isEmpty()) {
+            // Nothing answered (e.g. no permission yet), don't freeze an empty day
+            return new UsageHistoryStore.DayRollup(dayStart, appTimes, lastUsed, 0);
+        }
+        return historyStore.save(dayStart, appTimes, lastUsed, screenTime[0]);
+    }
+
+    /**
+     * Per-app foreground time in milliseconds for a single window, adding into the
+     * given maps. Sessions rebuilt from the event stream are the source; UsageStats
+     * is only consulted when the window has no events at all, e.g. when it lies
+     * beyond the event retention of the system. The window's screen time is added
+     * to screenTimeOut[0] if it is not null; UsageStats has no intervals, so for
+     * that source it is the sum of the app times.
+     * Returns whether either source answered.
+     */
+    public boolean aggregateWindow(long startTime, long endTime,
+            Map<String, Long> timesOut, Map<String, Long> lastUsedOut, long[] screenTimeOut) {
+        if (usageStatsManager == null) {
+            Log.e(TAG, "UsageStatsManager is null");
+            return false;
+        }
+
+        if (aggregateSessions(startTime, endTime, timesOut, lastUsedOut, screenTimeOut) > 0) {
+            return true;
+        }
+
+        List<UsageStats> stats;
+        try {
+            stats = usageStatsManager.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, startTime, endTime);
+            if (stats == null || stats.isEmpty()) {
+                // Try with INTERVAL_BEST if daily doesn't work
+                stats = usageStatsManager.queryUsageStats(UsageStatsManager.INTERVAL_BEST, startTime, endTime);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying usage stats", e);
+            return false;
+        }
+        if (stats == null || stats.isEmpty()) {
+            return false;
+        }
+
+        Map<String, Long> windowTimes = new HashMap<>();
+        Map<String, Long> windowLastUsed = new HashMap<>();
+        for (UsageStats stat : stats) {
+            long timeInForeground = stat.getTotalTimeInForeground();
+            if (timeInForeground <= 0) {
+                continue;
+            }
+            String packageName = stat.getPackageName();
+            if (!dictionary.isTracked(dictionary.intern(packageName))) {
+                continue;
+            }
+
+            Long current = windowTimes.get(packageName);
+            windowTimes.put(packageName, current != null ? current + timeInForeground : timeInForeground);
+            Long used = windowLastUsed.get(packageName);
+            if (used == null || stat.getLastTimeUsed() > used) {
+                windowLastUsed.put(packageName, stat.getLastTimeUsed());
+            }
+        }
+
+        addInto(windowTimes, windowLastUsed, timesOut, lastUsedOut);
+        if (screenTimeOut != null) {
+            for (long time : windowTimes.values()) {
+                screenTimeOut[0] += time;
+            }
+        }
+        return true;
+    }
+
+    private static void addInto(Map<String, Long> times, Map<String, Long> lastUsed,
+            Map<String, Long> timesOut, Map<String, Long> lastUsedOut) {
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            Long current = timesOut.get(entry.getKey());
+            timesOut.put(entry.getKey(), current != null ? current + entry.getValue() : entry.getValue());
+        }
+        for (Map.Entry<String, Long> entry : lastUsed.entrySet()) {
+            Long current = lastUsedOut.get(entry.getKey());
+            if (current == null || entry.getValue() > current) {
+                lastUsedOut.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Run a single UsageEvents query into the calling thread's buffer and hand it to the visitor.
+     * Does not take the engine lock, so scans (e.g. the day shards of a range) run
+     * in parallel with each other and with refresh().
+     * Returns the number of events scanned, or -1 if the query could not be made.
+     */
+    public int scanEvents(long startTime, long endTime, EventVisitor visitor) {
+        if (usageStatsManager == null) {
+            Log.e(TAG, "UsageStatsManager is null");
+            return -1;
+        }
+
+        try {
+            UsageEventBuffer buffer = scanBuffers.get();
+            int count = buffer.fill(usageStatsManager.queryEvents(startTime, endTime));
+            visitor.visit(buffer, count);
+            return count;
+        } catch (Exception e) {
+            Log.e(TAG, "Error scanning usage events", e);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.screentimereminder.app;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sequence-numbered delta state of one push channel.
+ * Remembers the last value pushed per key (grouped, e.g. "fields" and "apps")
+ * so each push only carries what changed. Every push gets the next sequence
+ * number; a listener that sees a gap asks for a resync, which sends the full
+ * state and makes it the new baseline.
+ */
+public class UsageDeltaChannel {
+    private long sequence = 0;
+    private final Map<String, Map<String, Object>> lastPushed = new HashMap<>();
+
+    /**
+     * Return the entries of values that differ from the last push of the group and
+     * record them as pushed. Keys that disappeared are added to removedOut (if not null).
+     */
+    public synchronized Map<String, Object> diff(String group, Map<String, ?> values, List<String> removedOut) {
+        Map<String, Object> previous = lastPushed.get(group);
+        if (previous == null) {
+            previous = new HashMap<>();
+            lastPushed.put(group, previous);
+        }
+
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value != null && !value.equals(previous.get(entry.getKey()))) {
+                changed.put(entry.getKey(), value);
+                previous.put(entry.getKey(), value);
+            }
+        }
+
+        Iterator<String> keys = previous.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!values.containsKey(key)) {
+                keys.remove();
+                if (removedOut != null) {
+                    removedOut.add(key);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Make values the baseline of the group, as after a full resync
+     */
+    public synchronized void reset(String group, Map<String, ?> values) {
+        Map<String, Object> baseline = new HashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            if (entry.getValue() != null) {
+                baseline.put(entry.getKey(), entry.getValue());
+            }
+        }
+        lastPushed.put(group, baseline);
+    }
+
+    public synchronized long nextSequence() {
+        return ++sequence;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+}
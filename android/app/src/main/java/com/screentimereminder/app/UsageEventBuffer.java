@@ -0,0 +1,88 @@
+package com.screentimereminder.app;
+
+import android.app.usage.UsageEvents;
+
+import java.util.Arrays;
+
+/**
+ * Reusable columnar buffer for a UsageEvents query.
+ * Events are unpacked once into primitive arrays (timestamps, package ids,
+ * event types) so the aggregation loops run without boxing per event.
+ * Package ids come from the process-wide PackageDictionary.
+ */
+public class UsageEventBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] packageIds = new int[INITIAL_CAPACITY];
+    private byte[] eventTypes = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private final PackageDictionary dictionary;
+    private final UsageEvents.Event event = new UsageEvents.Event();
+
+    public UsageEventBuffer(PackageDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Replace the buffer contents with the given events. Returns the event count.
+     */
+    public int fill(UsageEvents events) {
+        size = 0;
+        if (events == null) {
+            return 0;
+        }
+
+        while (events.hasNextEvent()) {
+            events.getNextEvent(event);
+            ensureCapacity(size + 1);
+            timestamps[size] = event.getTimeStamp();
+            packageIds[size] = dictionary.intern(event.getPackageName());
+            eventTypes[size] = (byte) event.getEventType();
+            size++;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        packageIds = Arrays.copyOf(packageIds, newCapacity);
+        eventTypes = Arrays.copyOf(eventTypes, newCapacity);
+    }
+
+    public PackageDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public String getPackageName(int packageId) {
+        return dictionary.getPackageName(packageId);
+    }
+
+    /**
+     * Number of distinct package ids assigned so far (upper bound for id-indexed arrays)
+     */
+    public int getPackageCount() {
+        return dictionary.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public int getPackageId(int index) {
+        return packageIds[index];
+    }
+
+    public int getEventType(int index) {
+        return eventTypes[index];
+    }
+}
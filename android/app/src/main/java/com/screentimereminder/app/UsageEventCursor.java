@@ -0,0 +1,422 @@
+package com.screentimereminder.app;
+
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Persisted per-day watermark over the UsageEvents stream.
+ * Each call to advance() only reads the events after the last processed
+ * timestamp and folds them into the running per-app totals for the day, so a
+ * tick costs O(events since last tick) instead of O(events since midnight).
+ * Per-app state is kept in arrays indexed by the buffer's package ids, with
+ * 24 hourly buckets per app so hour ranges can be answered without a query.
+ * Sessions are rebuilt by a UsageSessionEngine that follows the stream across ticks,
+ * and their intervals are kept in an IntervalUnion for the overlap-free day total.
+ * The app and the :background process each run a cursor over the same file:
+ * writes go to a per-process temp file renamed into place under a file lock,
+ * and a state behind the one already on disk is not written, so a restarting
+ * process always resumes from the most advanced complete state.
+ */
+public class UsageEventCursor {
+    private static final String TAG = "UsageEventCursor";
+    private static final String FILE_NAME = "usage_cursor.json";
+    // Holds the lock and the dayStart and watermark of the state in FILE_NAME
+    private static final String LOCK_FILE_NAME = "usage_cursor.lock";
+    private static final String KEY_DAY_START = "dayStart";
+    private static final String KEY_WATERMARK = "watermark";
+    private static final String KEY_APPS = "apps";
+    private static final String KEY_CARRY_IN = "carryIn";
+    private static final String KEY_INTERVALS = "intervals";
+    public static final int HOURS_PER_DAY = 24;
+
+    private final File file;
+    private final File lockFile;
+    private final UsageEventBuffer buffer;
+    private final PackageDictionary dictionary;
+    private final UsageSessionEngine sessions;
+    private final UsageSessionEngine.SessionSink sessionSink = this::onSession;
+
+    // Cursor state for the current day, indexed by package id
+    private long dayStart;
+    private long watermark;
+    private long[] appTimes = new long[64];
+    private long[] lastUsed = new long[64];
+    private long[] hourlyTimes = new long[64 * HOURS_PER_DAY]; // id * 24 + hour
+    private final IntervalUnion screenIntervals = new IntervalUnion();
+    private int openCount = 0;
+    private final long[] hourStarts = new long[HOURS_PER_DAY + 1];
+
+    public UsageEventCursor(Context context, UsageEventBuffer buffer) {
+        File directory = context.getApplicationContext().getFilesDir();
+        this.file = new File(directory, FILE_NAME);
+        this.lockFile = new File(directory, LOCK_FILE_NAME);
+        this.buffer = buffer;
+        this.dictionary = buffer.getDictionary();
+        this.sessions = new UsageSessionEngine(dictionary);
+        loadState();
+    }
+
+    private void loadState() {
+        try {
+            JSONObject state = new JSONObject();
+            if (file.exists()) {
+                // Renames are atomic, so the file is always one complete state
+                byte[] data;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    data = new byte[(int) raf.length()];
+                    raf.readFully(data);
+                }
+                state = new JSONObject(new String(data, StandardCharsets.UTF_8));
+            }
+
+            dayStart = state.optLong(KEY_DAY_START, 0);
+            watermark = state.optLong(KEY_WATERMARK, 0);
+            computeHourStarts();
+            sessions.reset(dayStart, false);
+            sessions.restoreWindow(dayStart, state.optBoolean(KEY_CARRY_IN, false));
+
+            JSONArray apps = state.optJSONArray(KEY_APPS);
+            if (apps == null) {
+                apps = new JSONArray();
+            }
+            for (int i = 0; i < apps.length(); i++) {
+                JSONObject app = apps.getJSONObject(i);
+                int id = dictionary.intern(app.getString("packageName"));
+                ensureCapacity(id + 1);
+                appTimes[id] = app.optLong("time", 0);
+                lastUsed[id] = app.optLong("lastUsed", 0);
+                sessions.restore(id, app.optLong("openSince", 0), true);
+                JSONArray hours = app.optJSONArray("hours");
+                if (hours != null) {
+                    for (int hour = 0; hour < HOURS_PER_DAY && hour < hours.length(); hour++) {
+                        hourlyTimes[id * HOURS_PER_DAY + hour] = hours.optLong(hour, 0);
+                    }
+                }
+            }
+
+            screenIntervals.clear();
+            JSONArray intervals = state.optJSONArray(KEY_INTERVALS);
+            for (int i = 0; intervals != null && i + 1 < intervals.length(); i += 2) {
+                screenIntervals.add(intervals.getLong(i), intervals.getLong(i + 1));
+            }
+
+            Log.d(TAG, String.format("Loaded cursor - day start: %d, watermark: %d, apps: %d",
+                dayStart, watermark, apps.length()));
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading cursor state, starting over", e);
+            resetForDay(0, false);
+        }
+    }
+
+    private void saveState() {
+        try {
+            JSONArray apps = new JSONArray();
+            for (int id = 0; id < lastUsed.length; id++) {
+                long openSince = sessions.getOpenSince(id);
+                if (lastUsed[id] == 0 && openSince == 0) {
+                    continue;
+                }
+                JSONObject app = new JSONObject();
+                app.put("packageName", dictionary.getPackageName(id));
+                app.put("time", appTimes[id]);
+                app.put("lastUsed", lastUsed[id]);
+                if (openSince > 0) {
+                    app.put("openSince", openSince);
+                }
+                JSONArray hours = new JSONArray();
+                for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+                    hours.put(hourlyTimes[id * HOURS_PER_DAY + hour]);
+                }
+                app.put("hours", hours);
+                apps.put(app);
+            }
+
+            // Stored as the disjoint union, flattened to [start, end, start, end, ...]
+            screenIntervals.compact();
+            JSONArray intervals = new JSONArray();
+            for (int i = 0; i < screenIntervals.size(); i++) {
+                intervals.put(screenIntervals.getStart(i));
+                intervals.put(screenIntervals.getEnd(i));
+            }
+
+            JSONObject state = new JSONObject();
+            state.put(KEY_DAY_START, dayStart);
+            state.put(KEY_WATERMARK, watermark);
+            state.put(KEY_APPS, apps);
+            state.put(KEY_CARRY_IN, sessions.isCarryIn());
+            state.put(KEY_INTERVALS, intervals);
+            writeState(state.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving cursor state", e);
+        }
+    }
+
+    private void writeState(byte[] data) throws IOException {
+        try (RandomAccessFile lockRaf = new RandomAccessFile(lockFile, "rw");
+             FileChannel channel = lockRaf.getChannel();
+             FileLock fileLock = channel.lock()) {
+            if (lockRaf.length() >= 16) {
+                long savedDayStart = lockRaf.readLong();
+                long savedWatermark = lockRaf.readLong();
+                if (savedDayStart > dayStart || (savedDayStart == dayStart && savedWatermark > watermark)) {
+                    // The other process is further along, its state is the better one to resume from
+                    return;
+                }
+            }
+
+            File tempFile = new File(file.getParentFile(), FILE_NAME + "." + android.os.Process.myPid() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(data);
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not move cursor file into place");
+            }
+
+            lockRaf.seek(0);
+            lockRaf.writeLong(dayStart);
+            lockRaf.writeLong(watermark);
+        }
+    }
+
+    /**
+     * Clear the totals for a new day. With keepSessions the open sessions carry
+     * over (they were already split at midnight), otherwise they are rebuilt from
+     * the new day's events.
+     */
+    private void resetForDay(long newDayStart, boolean keepSessions) {
+        Log.d(TAG, "Resetting cursor for new day starting at " + newDayStart);
+        dayStart = newDayStart;
+        watermark = newDayStart - 1;
+        Arrays.fill(appTimes, 0);
+        Arrays.fill(lastUsed, 0);
+        Arrays.fill(hourlyTimes, 0);
+        screenIntervals.clear();
+        computeHourStarts();
+        if (!keepSessions) {
+            // Apps already open at midnight only show up with their pause, count them from dayStart
+            sessions.reset(newDayStart, true);
+        }
+    }
+
+    /**
+     * Wall-clock start of each hour of the current day (index 24 is the next midnight)
+     */
+    private void computeHourStarts() {
+        Calendar calendar = Calendar.getInstance();
+        for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+            calendar.setTimeInMillis(dayStart);
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            hourStarts[hour] = Math.max(calendar.getTimeInMillis(), hour > 0 ? hourStarts[hour - 1] : dayStart);
+        }
+        hourStarts[HOURS_PER_DAY] = DayBoundary.getNextDayStart(dayStart);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= appTimes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, appTimes.length * 2);
+        appTimes = Arrays.copyOf(appTimes, newCapacity);
+        lastUsed = Arrays.copyOf(lastUsed, newCapacity);
+        hourlyTimes = Arrays.copyOf(hourlyTimes, newCapacity * HOURS_PER_DAY);
+    }
+
+    /**
+     * Add the session [start, end) to the day total and hourly buckets of an app,
+     * splitting it at hour boundaries.
+     */
+    private void addSession(int id, long start, long end, long[] totals, long[] hourly) {
+        start = Math.max(start, dayStart);
+        end = Math.min(end, hourStarts[HOURS_PER_DAY]);
+        if (end <= start) {
+            return;
+        }
+
+        totals[id] += end - start;
+        int hour = getHourIndex(start);
+        while (start < end) {
+            long hourEnd = Math.min(end, hourStarts[hour + 1]);
+            hourly[id * HOURS_PER_DAY + hour] += hourEnd - start;
+            start = hourEnd;
+            hour++;
+        }
+    }
+
+    private void onSession(int id, long start, long end) {
+        addSession(id, start, end, appTimes, hourlyTimes);
+        screenIntervals.add(Math.max(start, dayStart), Math.min(end, hourStarts[HOURS_PER_DAY]));
+        if (end > lastUsed[id]) {
+            lastUsed[id] = end;
+        }
+    }
+
+    private int getHourIndex(long time) {
+        int hour = 0;
+        while (hour < HOURS_PER_DAY - 1 && time >= hourStarts[hour + 1]) {
+            hour++;
+        }
+        return hour;
+    }
+
+    /**
+     * Read the events in (watermark, now] into the shared buffer and fold them
+     * into the running totals. Only packages accepted by
+     * PackageDictionary.isTracked are counted.
+     */
+    public synchronized void advance(UsageStatsManager usageStatsManager, long currentDayStart, long now) {
+        if (currentDayStart != dayStart) {
+            resetForDay(currentDayStart, false);
+        }
+        fold(usageStatsManager, now);
+    }
+
+    /**
+     * Move the cursor to the day starting at newDayStart. If that day directly
+     * follows the current one, the events up to midnight are folded in first,
+     * sessions still open at midnight are split between the two days, and the
+     * finished day's totals are copied into the given maps. Returns the
+     * finished day's screen time in milliseconds, or -1 if it was not copied
+     * and the cursor simply started over.
+     */
+    public synchronized long rollover(UsageStatsManager usageStatsManager, long newDayStart,
+            Map<String, Long> timesOut, Map<String, Long> lastUsedOut) {
+        if (newDayStart == dayStart) {
+            return -1;
+        }
+
+        long boundary = hourStarts[HOURS_PER_DAY];
+        if (dayStart == 0 || newDayStart != boundary) {
+            resetForDay(newDayStart, false);
+            return -1;
+        }
+
+        fold(usageStatsManager, boundary);
+        sessions.splitAt(boundary, sessionSink);
+        long screenTimeMs = snapshot(boundary, timesOut, lastUsedOut, null);
+        resetForDay(newDayStart, true);
+        saveState();
+        return screenTimeMs;
+    }
+
+    private void fold(UsageStatsManager usageStatsManager, long end) {
+        if (end <= watermark) {
+            return;
+        }
+
+        int count = buffer.fill(usageStatsManager.queryEvents(watermark + 1, end));
+        ensureCapacity(buffer.getPackageCount());
+
+        for (int i = 0; i < count; i++) {
+            long timestamp = buffer.getTimestamp(i);
+            if (timestamp > watermark) {
+                watermark = timestamp;
+            }
+        }
+        sessions.process(buffer, count, sessionSink);
+
+        if (count > 0) {
+            Log.d(TAG, "Processed " + count + " new events, watermark now " + watermark);
+            saveState();
+        }
+    }
+
+    /**
+     * Number of apps in the foreground at the last snapshot
+     */
+    public synchronized int getOpenCount() {
+        return openCount;
+    }
+
+    public synchronized long getDayStart() {
+        return dayStart;
+    }
+
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    public synchronized boolean isOpen(int id) {
+        return sessions.isOpen(id);
+    }
+
+    /**
+     * Start of the open session of an app, or 0 if it is not in the foreground
+     */
+    public synchronized long getOpenSince(int id) {
+        return sessions.getOpenSince(id);
+    }
+
+    /**
+     * Today's foreground time of one app in milliseconds, counting an open session up to now
+     */
+    public synchronized long getAppTime(int id, long now) {
+        if (id < 0 || id >= appTimes.length) {
+            return 0;
+        }
+        long time = appTimes[id];
+        long openSince = sessions.getOpenSince(id);
+        if (openSince > 0) {
+            time += Math.max(0, Math.min(now, hourStarts[HOURS_PER_DAY]) - Math.max(openSince, dayStart));
+        }
+        return time;
+    }
+
+    /**
+     * Copy today's per-app foreground time in milliseconds into the given maps,
+     * counting still-open sessions up to now. hourlyOut receives a 24-entry array
+     * of milliseconds per app and may be null. Returns today's screen time in
+     * milliseconds: the union of all sessions, so overlapping apps count once.
+     */
+    public synchronized long snapshot(long now, Map<String, Long> timesOut, Map<String, Long> lastUsedOut,
+            Map<String, long[]> hourlyOut) {
+        openCount = 0;
+        long[] openTotal = new long[1];
+        long[] openHourly = new long[HOURS_PER_DAY];
+        IntervalUnion openIntervals = new IntervalUnion();
+        for (int id = 0; id < lastUsed.length; id++) {
+            long openSince = sessions.getOpenSince(id);
+            boolean isOpen = openSince > 0;
+            if (lastUsed[id] == 0 && !isOpen) {
+                continue;
+            }
+            long time = appTimes[id];
+            long[] hours = Arrays.copyOfRange(hourlyTimes, id * HOURS_PER_DAY, (id + 1) * HOURS_PER_DAY);
+            if (isOpen) {
+                openCount++;
+            }
+            if (isOpen && now > openSince) {
+                openTotal[0] = 0;
+                Arrays.fill(openHourly, 0);
+                addSession(0, openSince, now, openTotal, openHourly);
+                openIntervals.add(Math.max(openSince, dayStart), Math.min(now, hourStarts[HOURS_PER_DAY]));
+                time += openTotal[0];
+                for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+                    hours[hour] += openHourly[hour];
+                }
+            }
+            String packageName = dictionary.getPackageName(id);
+            timesOut.put(packageName, time);
+            lastUsedOut.put(packageName, isOpen ? now : lastUsed[id]);
+            if (hourlyOut != null) {
+                hourlyOut.put(packageName, hours);
+            }
+        }
+        return screenIntervals.total(openIntervals);
+    }
+}
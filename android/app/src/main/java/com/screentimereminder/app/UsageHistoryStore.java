@@ -0,0 +1,189 @@
+package com.screentimereminder.app;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * On-disk store of frozen per-day usage rollups.
+ * Usage of a finished day can no longer change, so it is computed once,
+ * written to a small binary file and served from there afterwards.
+ * Files store package names rather than dictionary ids so they stay valid
+ * if the dictionary file is ever lost. Each rollup also keeps the day's
+ * screen time (the union of its sessions), which is less than the sum of
+ * the per-app times when apps overlapped.
+ */
+public class UsageHistoryStore {
+    private static final String TAG = "UsageHistoryStore";
+    private static final String DIR_NAME = "usage_history";
+    // Version 1 files have no screen time, it is then taken as the sum of the app times
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_CACHED_DAYS = 62;
+    private static UsageHistoryStore instance;
+    private static final Object lock = new Object();
+
+    private final File directory;
+    private final LruCache<Long, DayRollup> cache = new LruCache<>(MAX_CACHED_DAYS);
+
+    /**
+     * Immutable usage totals of one finished day
+     */
+    public static class DayRollup {
+        private final long dayStart;
+        private final Map<String, Long> appTimes;
+        private final Map<String, Long> lastUsed;
+        private final long screenTimeMs;
+
+        DayRollup(long dayStart, Map<String, Long> appTimes, Map<String, Long> lastUsed, long screenTimeMs) {
+            this.dayStart = dayStart;
+            this.appTimes = Collections.unmodifiableMap(appTimes);
+            this.lastUsed = Collections.unmodifiableMap(lastUsed);
+            this.screenTimeMs = screenTimeMs;
+        }
+
+        public long getDayStart() {
+            return dayStart;
+        }
+
+        public Map<String, Long> getAppTimes() {
+            return appTimes;
+        }
+
+        public Map<String, Long> getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Screen time of the day in milliseconds, overlapping sessions counted once
+         */
+        public long getScreenTimeMs() {
+            return screenTimeMs;
+        }
+    }
+
+    private UsageHistoryStore(Context context) {
+        this.directory = new File(context.getApplicationContext().getFilesDir(), DIR_NAME);
+    }
+
+    public static UsageHistoryStore getInstance(Context context) {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new UsageHistoryStore(context);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Load the rollup of the day starting at dayStart, or null if it was never frozen.
+     * Files are read outside the lock so parallel shards don't serialize on disk reads.
+     */
+    public DayRollup load(long dayStart) {
+        synchronized (this) {
+            DayRollup cached = cache.get(dayStart);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File file = getDayFile(dayStart);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if ((version != 1 && version != FORMAT_VERSION) || in.readLong() != dayStart) {
+                Log.w(TAG, "Discarding rollup with unexpected header: " + file.getName());
+                return null;
+            }
+
+            long screenTimeMs = version >= 2 ? in.readLong() : -1;
+            int count = in.readInt();
+            Map<String, Long> appTimes = new HashMap<>(count * 2);
+            Map<String, Long> lastUsed = new HashMap<>(count * 2);
+            long timeSum = 0;
+            for (int i = 0; i < count; i++) {
+                String packageName = in.readUTF();
+                long time = in.readLong();
+                appTimes.put(packageName, time);
+                lastUsed.put(packageName, in.readLong());
+                timeSum += time;
+            }
+
+            DayRollup rollup = new DayRollup(dayStart, appTimes, lastUsed,
+                screenTimeMs >= 0 ? screenTimeMs : timeSum);
+            synchronized (this) {
+                cache.put(dayStart, rollup);
+            }
+            return rollup;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading rollup " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Freeze a day. The file is written to a per-process temp file and renamed
+     * into place, so readers never see a partial rollup and the app and the
+     * :background process can't interleave writes into the same temp file.
+     */
+    public synchronized DayRollup save(long dayStart, Map<String, Long> appTimes, Map<String, Long> lastUsed,
+            long screenTimeMs) {
+        DayRollup rollup = new DayRollup(dayStart, new HashMap<>(appTimes), new HashMap<>(lastUsed), screenTimeMs);
+        cache.put(dayStart, rollup);
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create history directory");
+            return rollup;
+        }
+
+        File file = getDayFile(dayStart);
+        // Both processes freeze days, give each its own temp file
+        File tempFile = new File(directory, file.getName() + "." + android.os.Process.myPid() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(dayStart);
+            out.writeLong(screenTimeMs);
+            out.writeInt(appTimes.size());
+            for (Map.Entry<String, Long> entry : appTimes.entrySet()) {
+                Long used = lastUsed.get(entry.getKey());
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+                out.writeLong(used != null ? used : 0);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing rollup " + file.getName(), e);
+            tempFile.delete();
+            return rollup;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Could not move rollup into place: " + file.getName());
+            tempFile.delete();
+        } else {
+            Log.d(TAG, "Froze " + appTimes.size() + " apps for " + file.getName());
+        }
+        return rollup;
+    }
+
+    private File getDayFile(long dayStart) {
+        String day = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date(dayStart));
+        return new File(directory, day + ".bin");
+    }
+}
@@ -0,0 +1,61 @@
+package com.screentimereminder.app;
+
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams plugin responses into one reusable character buffer.
+ * Entries are serialized as they are produced instead of building a
+ * JSONObject tree first, so peak memory stays close to the size of the final
+ * string. Not thread-safe; use one instance per executor thread.
+ */
+public class UsageJsonWriter {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024; // don't keep a large buffer alive between calls
+
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+    private final Writer writer = new Writer() {
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            buffer.append(str, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Start a new document, discarding whatever was written before
+     */
+    public JsonWriter begin() {
+        buffer.setLength(0);
+        return new JsonWriter(writer);
+    }
+
+    /**
+     * Finish the document and return it as a string, releasing the buffer if it grew large
+     */
+    public String finish(JsonWriter json) throws IOException {
+        json.flush();
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package com.screentimereminder.app;
+
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Parsed options of an app-usage query: time range, icon option, minimum time
+ * and package filter. Shared by every plugin method that lists apps so they
+ * all interpret the options the same way.
+ */
+public class UsageQuery {
+    private static final String TAG = "UsageQuery";
+
+    public final long startTime;
+    public final long endTime;
+    public final boolean includeIcons;
+    public final double minTimeThreshold; // in minutes
+    public final Set<String> filterPackages;
+    public final boolean isIncludeFilter;
+
+    UsageQuery(long startTime, long endTime, boolean includeIcons, double minTimeThreshold,
+            Set<String> filterPackages, boolean isIncludeFilter) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.includeIcons = includeIcons;
+        this.minTimeThreshold = minTimeThreshold;
+        this.filterPackages = Collections.unmodifiableSet(filterPackages);
+        this.isIncludeFilter = isIncludeFilter;
+    }
+
+    /**
+     * Parse the call options. The default range is defaultStartTime to now.
+     */
+    public static UsageQuery fromOptions(JSObject options, long defaultStartTime, long now) {
+        long startTime = defaultStartTime;
+        long endTime = now;
+        boolean includeIcons = true;
+        double minTimeThreshold = 0.0;
+        Set<String> filterPackages = new HashSet<>();
+        boolean isIncludeFilter = false;
+
+        if (options != null) {
+            // Time range options
+            if (options.has("startTime")) {
+                startTime = options.optLong("startTime", startTime);
+            }
+            if (options.has("endTime")) {
+                endTime = options.optLong("endTime", endTime);
+            }
+
+            // Icon option to reduce payload size if needed
+            if (options.has("includeIcons")) {
+                includeIcons = options.optBoolean("includeIcons", true);
+            }
+
+            // Time threshold to filter out briefly used apps
+            if (options.has("minTimeThreshold")) {
+                minTimeThreshold = options.optDouble("minTimeThreshold", 0.0);
+            }
+
+            // Handle package filtering
+            if (options.has("filterPackages") && options.has("filterType")) {
+                try {
+                    JSONArray filterArray = new JSONArray(options.getString("filterPackages", "[]"));
+                    for (int i = 0; i < filterArray.length(); i++) {
+                        filterPackages.add(filterArray.getString(i));
+                    }
+
+                    String filterType = options.getString("filterType", "exclude");
+                    isIncludeFilter = "include".equalsIgnoreCase(filterType);
+
+                    Log.d(TAG, String.format("Using %s filter for %d packages",
+                        isIncludeFilter ? "include" : "exclude", filterPackages.size()));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error parsing filter options", e);
+                }
+            }
+        }
+
+        return new UsageQuery(startTime, endTime, includeIcons, minTimeThreshold, filterPackages, isIncludeFilter);
+    }
+
+    /**
+     * Whether an app with the given total passes the package filter and minimum time
+     */
+    public boolean accepts(String packageName, long timeMs) {
+        if (!filterPackages.isEmpty()) {
+            boolean inFilterList = filterPackages.contains(packageName);
+            if ((isIncludeFilter && !inFilterList) || (!isIncludeFilter && inFilterList)) {
+                return false;
+            }
+        }
+        return timeMs > 0 && timeMs >= (long) (minTimeThreshold * 60000);
+    }
+
+    public String getCacheKey(boolean live, long now) {
+        return UsageQueryCache.buildKey(startTime, endTime, live, now, includeIcons, minTimeThreshold,
+            filterPackages, isIncludeFilter);
+    }
+
+    /**
+     * The accepted apps of appTimes, sorted by time descending
+     */
+    public List<Map.Entry<String, Long>> rank(Map<String, Long> appTimes) {
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : appTimes.entrySet()) {
+            if (accepts(entry.getKey(), entry.getValue())) {
+                ranked.add(entry);
+            }
+        }
+        Collections.sort(ranked, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return ranked;
+    }
+
+    /**
+     * The n accepted apps of appTimes with the most time, sorted by time descending.
+     * Uses a bounded min-heap, so cost is O(apps * log n) and only n entries are kept.
+     */
+    public List<Map.Entry<String, Long>> top(Map<String, Long> appTimes, int n) {
+        // Never size the heap beyond the candidates, n comes from the caller
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(
+            Math.max(1, Math.min(n, appTimes.size())), (a, b) -> Long.compare(a.getValue(), b.getValue()));
+        for (Map.Entry<String, Long> entry : appTimes.entrySet()) {
+            if (!accepts(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            if (heap.size() < n) {
+                heap.add(entry);
+            } else if (entry.getValue() > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<Map.Entry<String, Long>> top = new ArrayList<>(heap);
+        Collections.sort(top, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return top;
+    }
+
+    /**
+     * Total time of the accepted apps of appTimes
+     */
+    public long total(Map<String, Long> appTimes) {
+        long total = 0;
+        for (Map.Entry<String, Long> entry : appTimes.entrySet()) {
+            if (accepts(entry.getKey(), entry.getValue())) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Screen time to report for the accepted apps, given the union screenTimeMs of
+     * all apps in appTimes. Overlapping sessions make the per-app sum too large;
+     * without a filter the union is exact, with one it is an upper bound.
+     */
+    public long screenTime(Map<String, Long> appTimes, long screenTimeMs) {
+        return Math.min(total(appTimes), screenTimeMs);
+    }
+}
@@ -0,0 +1,89 @@
+package com.screentimereminder.app;
+
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded cache of serialized getAppUsageData results keyed by the normalized
+ * query parameters. Results for ranges that include today are tied to the
+ * aggregation engine's event watermark and dropped as soon as new events
+ * arrive; results for finished ranges never change and only age out of the LRU.
+ */
+public class UsageQueryCache {
+    private static final int MAX_SIZE_CHARS = 2 * 1024 * 1024; // results with icons are large
+    private static final long MAX_LIVE_AGE = 60 * 1000; // bound staleness of still-open sessions
+
+    private static class Entry {
+        final String result;
+        final long watermark;
+        final long createdAt;
+        final boolean live;
+
+        Entry(String result, long watermark, long createdAt, boolean live) {
+            this.result = result;
+            this.watermark = watermark;
+            this.createdAt = createdAt;
+            this.live = live;
+        }
+    }
+
+    private final LruCache<String, Entry> entries = new LruCache<String, Entry>(MAX_SIZE_CHARS) {
+        @Override
+        protected int sizeOf(String key, Entry entry) {
+            return key.length() + entry.result.length();
+        }
+    };
+
+    /**
+     * Build the cache key for a query. A live range ending at (about) now is keyed
+     * as "now" so repeated calls with a fresh Date.now() share one entry.
+     */
+    public static String buildKey(long startTime, long endTime, boolean live, long now, boolean includeIcons,
+            double minTimeThreshold, Set<String> filterPackages, boolean isIncludeFilter) {
+        StringBuilder key = new StringBuilder();
+        key.append(startTime).append('|');
+        if (live && endTime >= now - MAX_LIVE_AGE) {
+            key.append("now");
+        } else {
+            key.append(endTime);
+        }
+        key.append('|').append(includeIcons).append('|').append(minTimeThreshold);
+
+        if (!filterPackages.isEmpty()) {
+            List<String> sorted = new ArrayList<>(filterPackages);
+            Collections.sort(sorted);
+            key.append('|').append(isIncludeFilter ? "include" : "exclude");
+            for (String packageName : sorted) {
+                key.append(',').append(packageName);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Cached result for the key, or null if missing or invalidated by new events
+     */
+    public synchronized String get(String key, long watermark, long now) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.live && (entry.watermark != watermark || now - entry.createdAt > MAX_LIVE_AGE)) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    public synchronized void put(String key, String result, long watermark, long now, boolean live) {
+        entries.put(key, new Entry(result, watermark, now, live));
+    }
+
+    public synchronized void clear() {
+        entries.evictAll();
+    }
+}
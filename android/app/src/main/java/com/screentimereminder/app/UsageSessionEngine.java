@@ -0,0 +1,197 @@
+package com.screentimereminder.app;
+
+import android.app.usage.UsageEvents;
+
+import java.util.Arrays;
+
+/**
+ * Rebuilds foreground sessions from the UsageEvents stream in a single pass.
+ * An app is in the foreground from its first resumed activity until its last
+ * paused one; the screen turning off or the keyguard showing closes every
+ * open session, since nothing is visible after that. The screen turning
+ * back on or the keyguard going away does not reopen anything: the app
+ * underneath gets its own resumed event once it is visible again, and that
+ * event opens the new session. Reopening at the screen or keyguard event
+ * would count the time the lock screen is showing. Today's cursor and
+ * range queries both use this class, so they count sessions the same way.
+ * Open state is indexed by package id and survives across process() calls,
+ * so one instance can follow a stream incrementally.
+ */
+public class UsageSessionEngine {
+    // Resumed/paused share their values with the older MOVE_TO_FOREGROUND/BACKGROUND,
+    // screen and keyguard events are only reported from API 28 on
+    private static final int ACTIVITY_RESUMED = UsageEvents.Event.MOVE_TO_FOREGROUND;
+    private static final int ACTIVITY_PAUSED = UsageEvents.Event.MOVE_TO_BACKGROUND;
+    private static final int SCREEN_NON_INTERACTIVE = 16;
+    private static final int KEYGUARD_SHOWN = 17;
+
+    /**
+     * Receives every closed session [start, end) of a tracked package
+     */
+    public interface SessionSink {
+        void onSession(int packageId, long start, long end);
+    }
+
+    /**
+     * Decides which package ids are counted
+     */
+    interface PackageFilter {
+        boolean isTracked(int packageId);
+    }
+
+    private final PackageFilter filter;
+    private long windowStart;
+    private boolean carryIn;
+    private long[] openSince = new long[64];
+    private int[] resumedCount = new int[64];
+    private boolean[] seen = new boolean[64];
+
+    public UsageSessionEngine(PackageDictionary dictionary) {
+        this(dictionary::isTracked);
+    }
+
+    UsageSessionEngine(PackageFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Forget all open sessions and start following a stream at windowStart.
+     * With carryIn, a pause that arrives before any event of its app (and
+     * before the screen went off) means the app was already in the foreground
+     * when the window started, so it counts from windowStart.
+     */
+    public void reset(long windowStart, boolean carryIn) {
+        this.windowStart = windowStart;
+        this.carryIn = carryIn;
+        Arrays.fill(openSince, 0);
+        Arrays.fill(resumedCount, 0);
+        Arrays.fill(seen, false);
+    }
+
+    /**
+     * Fold the first count events of the buffer into the open state, reporting
+     * each closed session to the sink. Events must be in timestamp order.
+     */
+    public void process(UsageEventBuffer buffer, int count, SessionSink sink) {
+        ensureCapacity(buffer.getPackageCount());
+
+        for (int i = 0; i < count; i++) {
+            int eventType = buffer.getEventType(i);
+            long timestamp = buffer.getTimestamp(i);
+
+            // Screen and keyguard events come from the system package, handle them before filtering
+            if (eventType == SCREEN_NON_INTERACTIVE || eventType == KEYGUARD_SHOWN) {
+                closeAll(timestamp, sink);
+                carryIn = false;
+                continue;
+            }
+            // Screen on and keyguard hidden are skipped here, the next resume reopens the session
+            if (eventType != ACTIVITY_RESUMED && eventType != ACTIVITY_PAUSED) {
+                continue;
+            }
+
+            int id = buffer.getPackageId(i);
+            if (!filter.isTracked(id)) {
+                continue;
+            }
+
+            if (eventType == ACTIVITY_RESUMED) {
+                if (resumedCount[id]++ == 0) {
+                    openSince[id] = timestamp;
+                }
+            } else if (resumedCount[id] > 0) {
+                if (--resumedCount[id] == 0) {
+                    sink.onSession(id, openSince[id], timestamp);
+                    openSince[id] = 0;
+                }
+            } else if (carryIn && !seen[id]) {
+                sink.onSession(id, windowStart, timestamp);
+            }
+            seen[id] = true;
+        }
+    }
+
+    /**
+     * Close every open session at the given time
+     */
+    public void closeAll(long time, SessionSink sink) {
+        for (int id = 0; id < openSince.length; id++) {
+            if (resumedCount[id] > 0) {
+                if (time > openSince[id]) {
+                    sink.onSession(id, openSince[id], time);
+                }
+                resumedCount[id] = 0;
+                openSince[id] = 0;
+            }
+        }
+    }
+
+    /**
+     * Split every open session at boundary: the part before it is reported to
+     * the sink and the session continues from boundary
+     */
+    public void splitAt(long boundary, SessionSink sink) {
+        for (int id = 0; id < openSince.length; id++) {
+            if (resumedCount[id] > 0 && boundary > openSince[id]) {
+                sink.onSession(id, openSince[id], boundary);
+                openSince[id] = boundary;
+            }
+        }
+        windowStart = boundary;
+    }
+
+    /**
+     * Report the still-open sessions as if they ended now, without closing them
+     */
+    public void forEachOpen(long now, SessionSink sink) {
+        for (int id = 0; id < openSince.length; id++) {
+            if (resumedCount[id] > 0 && now > openSince[id]) {
+                sink.onSession(id, openSince[id], now);
+            }
+        }
+    }
+
+    public boolean isOpen(int packageId) {
+        return packageId < resumedCount.length && resumedCount[packageId] > 0;
+    }
+
+    /**
+     * Start of the open session of a package, or 0 if it is not in the foreground
+     */
+    public long getOpenSince(int packageId) {
+        return isOpen(packageId) ? openSince[packageId] : 0;
+    }
+
+    public boolean hasSeen(int packageId) {
+        return packageId < seen.length && seen[packageId];
+    }
+
+    public boolean isCarryIn() {
+        return carryIn;
+    }
+
+    /**
+     * Restore the persisted state of one package (openSince 0 means closed)
+     */
+    public void restore(int packageId, long openSince, boolean seen) {
+        ensureCapacity(packageId + 1);
+        this.openSince[packageId] = openSince;
+        this.resumedCount[packageId] = openSince > 0 ? 1 : 0;
+        this.seen[packageId] = seen;
+    }
+
+    public void restoreWindow(long windowStart, boolean carryIn) {
+        this.windowStart = windowStart;
+        this.carryIn = carryIn;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= openSince.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, openSince.length * 2);
+        openSince = Arrays.copyOf(openSince, newCapacity);
+        resumedCount = Arrays.copyOf(resumedCount, newCapacity);
+        seen = Arrays.copyOf(seen, newCapacity);
+    }
+}
@@ -0,0 +1,97 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AppLimitTableTest {
+    private static final long MINUTE = 60000;
+    private static final long NOW = 1000000;
+
+    @Test
+    public void noLimitIsNeverCrossed() {
+        assertEquals(AppLimitTable.STATE_NONE, AppLimitTable.getState(500 * MINUTE, 0));
+    }
+
+    @Test
+    public void stateFollowsThresholds() {
+        long limit = 100 * MINUTE;
+        assertEquals(AppLimitTable.STATE_NONE, AppLimitTable.getState(0, limit));
+        assertEquals(AppLimitTable.STATE_NONE, AppLimitTable.getState(90 * MINUTE - 1, limit));
+        assertEquals(AppLimitTable.STATE_APPROACHING, AppLimitTable.getState(90 * MINUTE, limit));
+        assertEquals(AppLimitTable.STATE_APPROACHING, AppLimitTable.getState(limit - 1, limit));
+        assertEquals(AppLimitTable.STATE_REACHED, AppLimitTable.getState(limit, limit));
+        assertEquals(AppLimitTable.STATE_REACHED, AppLimitTable.getState(limit + MINUTE, limit));
+    }
+
+    @Test
+    public void crossingBeforeApproachingIsTheApproachingThreshold() {
+        long crossing = AppLimitTable.getCrossing(30 * MINUTE, 100 * MINUTE, AppLimitTable.STATE_NONE, NOW);
+
+        assertEquals(NOW + 60 * MINUTE, crossing);
+    }
+
+    @Test
+    public void crossingWhileApproachingIsTheLimit() {
+        long crossing = AppLimitTable.getCrossing(95 * MINUTE, 100 * MINUTE, AppLimitTable.STATE_APPROACHING, NOW);
+
+        assertEquals(NOW + 5 * MINUTE, crossing);
+    }
+
+    @Test
+    public void thresholdAlreadyPassedCrossesNow() {
+        // Used time is past the approaching threshold but it was not notified yet
+        long crossing = AppLimitTable.getCrossing(95 * MINUTE, 100 * MINUTE, AppLimitTable.STATE_NONE, NOW);
+
+        assertEquals(NOW, crossing);
+    }
+
+    @Test
+    public void reachedLimitHasNoCrossing() {
+        long crossing = AppLimitTable.getCrossing(120 * MINUTE, 100 * MINUTE, AppLimitTable.STATE_REACHED, NOW);
+
+        assertEquals(Long.MAX_VALUE, crossing);
+    }
+
+    @Test
+    public void crossingAgreesWithState() {
+        long limit = 100 * MINUTE;
+        long used = 42 * MINUTE;
+        long crossing = AppLimitTable.getCrossing(used, limit, AppLimitTable.STATE_NONE, NOW);
+
+        // Used time grows in real time while the app is open
+        long usedAtCrossing = used + (crossing - NOW);
+        assertEquals(AppLimitTable.STATE_NONE, AppLimitTable.getState(usedAtCrossing - 1, limit));
+        assertEquals(AppLimitTable.STATE_APPROACHING, AppLimitTable.getState(usedAtCrossing, limit));
+    }
+
+    @Test
+    public void closedAppCrossingIsPushedToTheSlack() {
+        long slack = SettingsConstants.MIN_LIMIT_ALARM_SLACK;
+        assertEquals(NOW + slack, AppLimitTable.withSlack(NOW, NOW));
+        assertEquals(NOW + slack, AppLimitTable.withSlack(NOW + slack - 1, NOW));
+        assertEquals(NOW + 10 * slack, AppLimitTable.withSlack(NOW + 10 * slack, NOW));
+        assertEquals(Long.MAX_VALUE, AppLimitTable.withSlack(Long.MAX_VALUE, NOW));
+    }
+
+    @Test
+    public void reloadResetsStatesOfChangedLimits() {
+        long[] previous = {0, 60 * MINUTE, 30 * MINUTE, 45 * MINUTE};
+        // App 1 raised, app 2 unchanged, app 3 removed, app 4 added by the other process
+        long[] loaded = {0, 90 * MINUTE, 30 * MINUTE, 0, 20 * MINUTE};
+        byte[] states = {
+            AppLimitTable.STATE_NONE,
+            AppLimitTable.STATE_REACHED,
+            AppLimitTable.STATE_APPROACHING,
+            AppLimitTable.STATE_REACHED,
+            AppLimitTable.STATE_NONE
+        };
+
+        AppLimitTable.resetChangedStates(previous, loaded, states);
+
+        assertEquals(AppLimitTable.STATE_NONE, states[1]);
+        assertEquals(AppLimitTable.STATE_APPROACHING, states[2]);
+        assertEquals(AppLimitTable.STATE_NONE, states[3]);
+        assertEquals(AppLimitTable.STATE_NONE, states[4]);
+    }
+}
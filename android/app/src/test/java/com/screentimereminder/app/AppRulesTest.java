@@ -0,0 +1,123 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class AppRulesTest {
+
+    private static AppRules rules(String text) throws IOException {
+        return new AppRules(new BufferedReader(new StringReader(text)));
+    }
+
+    @Test
+    public void emptyRulesMatchNothing() throws IOException {
+        AppRules rules = rules("");
+
+        assertEquals(0, rules.match("com.instagram.android"));
+        assertFalse(rules.isCommonApp("com.android.chrome"));
+        assertEquals("Other", rules.getCategoryForApp("Instagram"));
+    }
+
+    @Test
+    public void commentsAndMalformedLinesAreSkipped() throws IOException {
+        AppRules rules = rules("# comment: social\n\nno colon here\n:missing group\nSocial: social\n");
+
+        assertEquals("Social", rules.getCategoryForApp("Social Club"));
+        assertEquals("Other", rules.getCategoryForApp("comment"));
+    }
+
+    @Test
+    public void commonGroupIsNotACategory() throws IOException {
+        AppRules rules = rules("common: chrome\nBrowsers: browser\n");
+
+        assertTrue(rules.isCommonApp("com.android.chrome"));
+        assertFalse(rules.isCommonApp("com.example.notes"));
+        assertEquals("Other", rules.getCategoryForApp("Chrome"));
+    }
+
+    @Test
+    public void matchingIsCaseInsensitive() throws IOException {
+        AppRules rules = rules("Social: Instagram\n");
+
+        assertEquals("Social", rules.getCategoryForApp("INSTAGRAM Lite"));
+        assertEquals("Social", rules.getCategoryForApp("com.instagram.android"));
+    }
+
+    @Test
+    public void firstGroupInTheFileWins() throws IOException {
+        AppRules rules = rules("Entertainment: music\nProductivity: player\n");
+
+        assertEquals("Entertainment", rules.getCategoryForApp("Music Player"));
+        assertEquals("Productivity", rules.getCategoryForApp("Media Player"));
+    }
+
+    @Test
+    public void overlappingKeywordsAreAllFound() throws IOException {
+        // Classic failure-link case: "ushers" contains "she", "he" and "hers"
+        AppRules rules = rules("A: he\nB: she\nC: his\nD: hers\n");
+
+        assertEquals(0b1011, rules.match("ushers"));
+        assertEquals(0b0100, rules.match("this"));
+    }
+
+    @Test
+    public void nonAsciiCharactersResetTheMatch() throws IOException {
+        AppRules rules = rules("Social: chat\nFood: café\n");
+
+        assertEquals("Social", rules.getCategoryForApp("Ünïcode chat"));
+        assertEquals(0, rules.match("chät"));
+        // Keywords that can't match after lowercasing are skipped
+        assertEquals(0, rules.match("café"));
+    }
+
+    @Test
+    public void matchesBruteForceContains() throws IOException {
+        String[] keywords = {"ab", "b", "abc", "ca", "bca", "aa", "cab"};
+        StringBuilder text = new StringBuilder();
+        for (int g = 0; g < keywords.length; g++) {
+            text.append("G").append(g).append(": ").append(keywords[g]).append('\n');
+        }
+        AppRules rules = rules(text.toString());
+
+        Random random = new Random(7);
+        for (int round = 0; round < 1000; round++) {
+            StringBuilder name = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                name.append("abcx".charAt(random.nextInt(4)));
+            }
+
+            int expected = 0;
+            for (int g = 0; g < keywords.length; g++) {
+                if (name.toString().contains(keywords[g])) {
+                    expected |= 1 << g;
+                }
+            }
+            assertEquals(name.toString(), expected, rules.match(name.toString()));
+        }
+    }
+
+    @Test
+    public void bundledRulesClassifyKnownApps() throws IOException {
+        // Local unit tests run in the module directory
+        AppRules rules;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream("src/main/res/raw/app_rules.txt"), StandardCharsets.UTF_8))) {
+            rules = new AppRules(reader);
+        }
+
+        assertEquals("Social Media", rules.getCategoryForApp("Instagram"));
+        assertEquals("Games", rules.getCategoryForApp("Minecraft"));
+        assertEquals("Other", rules.getCategoryForApp("Calculator"));
+        assertTrue(rules.isCommonApp("com.android.chrome"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class IntervalUnionTest {
+
+    @Test
+    public void emptyUnionIsZero() {
+        assertEquals(0, new IntervalUnion().total());
+    }
+
+    @Test
+    public void disjointIntervalsAreSummed() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(0, 10);
+        union.add(20, 25);
+
+        assertEquals(15, union.total());
+    }
+
+    @Test
+    public void overlappingIntervalsCountOnce() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(0, 10);
+        union.add(5, 15);
+        union.add(2, 4);
+
+        assertEquals(15, union.total());
+    }
+
+    @Test
+    public void adjacentIntervalsJoin() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(0, 5);
+        union.add(5, 10);
+
+        assertEquals(10, union.total());
+    }
+
+    @Test
+    public void emptyIntervalsAreIgnored() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(5, 5);
+        union.add(9, 3);
+
+        assertEquals(0, union.size());
+        assertEquals(0, union.total());
+    }
+
+    @Test
+    public void extraIntervalsAreCountedButNotKept() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(0, 10);
+        IntervalUnion extra = new IntervalUnion();
+        extra.add(5, 20);
+
+        assertEquals(20, union.total(extra));
+        assertEquals(1, union.size());
+        assertEquals(10, union.total());
+    }
+
+    @Test
+    public void compactKeepsTheDisjointUnion() {
+        IntervalUnion union = new IntervalUnion();
+        union.add(30, 40);
+        union.add(0, 10);
+        union.add(5, 15);
+        union.add(15, 20);
+
+        union.compact();
+
+        assertEquals(2, union.size());
+        assertEquals(0, union.getStart(0));
+        assertEquals(20, union.getEnd(0));
+        assertEquals(30, union.getStart(1));
+        assertEquals(40, union.getEnd(1));
+        assertEquals(30, union.total());
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        IntervalUnion union = new IntervalUnion();
+        for (int i = 0; i < 1000; i++) {
+            union.add(i * 10, i * 10 + 5);
+        }
+
+        assertEquals(1000, union.size());
+        assertEquals(5000, union.total());
+    }
+
+    @Test
+    public void matchesBruteForceOnRandomIntervals() {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            IntervalUnion union = new IntervalUnion();
+            boolean[] covered = new boolean[500];
+            int count = 1 + random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                int start = random.nextInt(450);
+                int end = start + random.nextInt(50);
+                union.add(start, end);
+                for (int t = start; t < end; t++) {
+                    covered[t] = true;
+                }
+            }
+
+            long expected = 0;
+            for (boolean c : covered) {
+                if (c) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, union.total());
+            union.compact();
+            assertEquals(expected, union.total());
+        }
+    }
+}
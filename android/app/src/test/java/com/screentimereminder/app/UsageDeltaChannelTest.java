@@ -0,0 +1,83 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UsageDeltaChannelTest {
+
+    @Test
+    public void firstDiffContainsEverything() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1.0);
+        values.put("b", 2.0);
+
+        assertEquals(values, channel.diff("apps", values, null));
+    }
+
+    @Test
+    public void diffOnlyContainsChangedValues() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1.0);
+        values.put("b", 2.0);
+        channel.diff("apps", values, null);
+
+        values.put("b", 3.0);
+        Map<String, Object> changed = channel.diff("apps", values, null);
+
+        assertEquals(1, changed.size());
+        assertEquals(3.0, changed.get("b"));
+        assertTrue(channel.diff("apps", values, null).isEmpty());
+    }
+
+    @Test
+    public void removedKeysAreReported() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1.0);
+        values.put("b", 2.0);
+        channel.diff("apps", values, null);
+
+        values.remove("a");
+        List<String> removed = new ArrayList<>();
+        assertTrue(channel.diff("apps", values, removed).isEmpty());
+        assertEquals(1, removed.size());
+        assertEquals("a", removed.get(0));
+    }
+
+    @Test
+    public void groupsAreIndependent() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1.0);
+        channel.diff("apps", values, null);
+
+        assertEquals(values, channel.diff("fields", values, null));
+    }
+
+    @Test
+    public void resetMakesValuesTheBaseline() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 1.0);
+        channel.reset("apps", values);
+
+        assertTrue(channel.diff("apps", values, null).isEmpty());
+    }
+
+    @Test
+    public void sequenceIncrementsByOne() {
+        UsageDeltaChannel channel = new UsageDeltaChannel();
+        assertEquals(0, channel.getSequence());
+        assertEquals(1, channel.nextSequence());
+        assertEquals(2, channel.nextSequence());
+        assertEquals(2, channel.getSequence());
+    }
+}
@@ -0,0 +1,97 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class UsageQueryTest {
+
+    private static UsageQuery query(double minTimeThreshold, boolean isIncludeFilter, String... packages) {
+        return new UsageQuery(0, 1000, false, minTimeThreshold,
+            new HashSet<>(Arrays.asList(packages)), isIncludeFilter);
+    }
+
+    private static Map<String, Long> appTimes() {
+        Map<String, Long> appTimes = new HashMap<>();
+        appTimes.put("a", 60000L);
+        appTimes.put("b", 300000L);
+        appTimes.put("c", 120000L);
+        appTimes.put("d", 0L);
+        return appTimes;
+    }
+
+    @Test
+    public void rankSortsAcceptedAppsByTime() {
+        List<Map.Entry<String, Long>> ranked = query(0, false).rank(appTimes());
+
+        assertEquals(3, ranked.size());
+        assertEquals("b", ranked.get(0).getKey());
+        assertEquals("c", ranked.get(1).getKey());
+        assertEquals("a", ranked.get(2).getKey());
+    }
+
+    @Test
+    public void topKeepsTheLargestN() {
+        List<Map.Entry<String, Long>> top = query(0, false).top(appTimes(), 2);
+
+        assertEquals(2, top.size());
+        assertEquals("b", top.get(0).getKey());
+        assertEquals("c", top.get(1).getKey());
+    }
+
+    @Test
+    public void topMatchesRankPrefix() {
+        UsageQuery query = query(0, false);
+        for (int n = 1; n <= 4; n++) {
+            List<Map.Entry<String, Long>> ranked = query.rank(appTimes());
+            assertEquals(ranked.subList(0, Math.min(n, ranked.size())), query.top(appTimes(), n));
+        }
+    }
+
+    @Test
+    public void topWithHugeNOnlyReturnsCandidates() {
+        assertEquals(3, query(0, false).top(appTimes(), Integer.MAX_VALUE).size());
+        assertTrue(query(0, false).top(Collections.<String, Long>emptyMap(), 1000).isEmpty());
+    }
+
+    @Test
+    public void excludeFilterDropsPackages() {
+        List<Map.Entry<String, Long>> ranked = query(0, false, "b").rank(appTimes());
+
+        assertEquals(2, ranked.size());
+        assertEquals("c", ranked.get(0).getKey());
+    }
+
+    @Test
+    public void includeFilterKeepsOnlyPackages() {
+        List<Map.Entry<String, Long>> ranked = query(0, true, "a", "d").rank(appTimes());
+
+        assertEquals(1, ranked.size());
+        assertEquals("a", ranked.get(0).getKey());
+    }
+
+    @Test
+    public void minTimeThresholdIsInMinutes() {
+        List<Map.Entry<String, Long>> ranked = query(2, false).rank(appTimes());
+
+        assertEquals(2, ranked.size());
+        assertEquals("c", ranked.get(1).getKey());
+    }
+
+    @Test
+    public void screenTimeIsCappedByTheUnion() {
+        UsageQuery query = query(0, false);
+        assertEquals(480000L, query.total(appTimes()));
+        // Overlapping sessions, the union is smaller than the sum
+        assertEquals(400000L, query.screenTime(appTimes(), 400000L));
+        // A filter can make the sum of the remaining apps the smaller bound
+        assertEquals(60000L, query(0, true, "a").screenTime(appTimes(), 400000L));
+    }
+}
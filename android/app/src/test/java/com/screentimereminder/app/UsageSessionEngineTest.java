@@ -0,0 +1,216 @@
+package com.screentimereminder.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UsageSessionEngineTest {
+    private static final int RESUMED = 1;
+    private static final int PAUSED = 2;
+    private static final int SCREEN_ON = 15;
+    private static final int SCREEN_OFF = 16;
+    private static final int KEYGUARD_SHOWN = 17;
+    private static final int KEYGUARD_HIDDEN = 18;
+    private static final int PACKAGES = 4;
+    private static final int UNTRACKED = 3;
+
+    /**
+     * Events added directly instead of read from a UsageEvents query
+     */
+    private static class EventList extends UsageEventBuffer {
+        private final List<long[]> events = new ArrayList<>();
+
+        EventList() {
+            super(null);
+        }
+
+        EventList add(long timestamp, int packageId, int eventType) {
+            events.add(new long[] {timestamp, packageId, eventType});
+            return this;
+        }
+
+        @Override
+        public int getPackageCount() {
+            return PACKAGES;
+        }
+
+        @Override
+        public int size() {
+            return events.size();
+        }
+
+        @Override
+        public long getTimestamp(int index) {
+            return events.get(index)[0];
+        }
+
+        @Override
+        public int getPackageId(int index) {
+            return (int) events.get(index)[1];
+        }
+
+        @Override
+        public int getEventType(int index) {
+            return (int) events.get(index)[2];
+        }
+    }
+
+    private final List<long[]> sessions = new ArrayList<>();
+    private final UsageSessionEngine.SessionSink sink = (id, start, end) -> sessions.add(new long[] {id, start, end});
+    private UsageSessionEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new UsageSessionEngine(id -> id != UNTRACKED);
+    }
+
+    private void process(EventList events) {
+        engine.process(events, events.size(), sink);
+    }
+
+    private void assertSessions(long[]... expected) {
+        assertEquals(expected.length, sessions.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], sessions.get(i));
+        }
+    }
+
+    @Test
+    public void resumeAndPauseMakeASession() {
+        engine.reset(0, false);
+        process(new EventList().add(100, 0, RESUMED).add(250, 0, PAUSED));
+
+        assertSessions(new long[] {0, 100, 250});
+        assertFalse(engine.isOpen(0));
+    }
+
+    @Test
+    public void sessionLastsUntilTheLastActivityPauses() {
+        engine.reset(0, false);
+        process(new EventList()
+            .add(100, 0, RESUMED)
+            .add(150, 0, RESUMED)
+            .add(160, 0, PAUSED)
+            .add(300, 0, PAUSED));
+
+        assertSessions(new long[] {0, 100, 300});
+    }
+
+    @Test
+    public void pauseWithoutResumeCountsFromWindowStartWithCarryIn() {
+        engine.reset(1000, true);
+        process(new EventList().add(1500, 1, PAUSED));
+
+        assertSessions(new long[] {1, 1000, 1500});
+    }
+
+    @Test
+    public void pauseWithoutResumeIsIgnoredWithoutCarryIn() {
+        engine.reset(1000, false);
+        process(new EventList().add(1500, 1, PAUSED));
+
+        assertSessions();
+    }
+
+    @Test
+    public void carryInOnlyAppliesToTheFirstEventOfAnApp() {
+        engine.reset(1000, true);
+        process(new EventList()
+            .add(1100, 1, RESUMED)
+            .add(1200, 1, PAUSED)
+            .add(1300, 1, PAUSED));
+
+        assertSessions(new long[] {1, 1100, 1200});
+    }
+
+    @Test
+    public void screenOffClosesEveryOpenSession() {
+        engine.reset(0, false);
+        process(new EventList()
+            .add(100, 0, RESUMED)
+            .add(200, 1, RESUMED)
+            .add(500, 0, SCREEN_OFF)
+            .add(600, 0, PAUSED)
+            .add(600, 1, PAUSED));
+
+        assertSessions(new long[] {0, 100, 500}, new long[] {1, 200, 500});
+        assertFalse(engine.isOpen(0));
+        assertFalse(engine.isOpen(1));
+    }
+
+    @Test
+    public void keyguardClosesSessionsAndEndsCarryIn() {
+        engine.reset(1000, true);
+        process(new EventList()
+            .add(1100, 0, RESUMED)
+            .add(1400, 0, KEYGUARD_SHOWN)
+            .add(1500, 1, PAUSED));
+
+        assertSessions(new long[] {0, 1100, 1400});
+        assertFalse(engine.isCarryIn());
+    }
+
+    @Test
+    public void nextResumeReopensTheSessionAfterUnlock() {
+        engine.reset(0, false);
+        process(new EventList()
+            .add(100, 0, RESUMED)
+            .add(200, 0, SCREEN_OFF)
+            .add(210, 0, PAUSED)
+            .add(500, 0, SCREEN_ON)
+            .add(520, 0, KEYGUARD_HIDDEN));
+
+        // Lock screen time before the app resumes is not counted
+        assertSessions(new long[] {0, 100, 200});
+        assertFalse(engine.isOpen(0));
+
+        process(new EventList().add(530, 0, RESUMED).add(700, 0, PAUSED));
+        assertSessions(new long[] {0, 100, 200}, new long[] {0, 530, 700});
+    }
+
+    @Test
+    public void untrackedPackagesAreIgnored() {
+        engine.reset(0, true);
+        process(new EventList().add(100, UNTRACKED, RESUMED).add(200, UNTRACKED, PAUSED));
+
+        assertSessions();
+    }
+
+    @Test
+    public void openSessionsSurviveAcrossProcessCalls() {
+        engine.reset(0, false);
+        process(new EventList().add(100, 0, RESUMED));
+        assertTrue(engine.isOpen(0));
+        assertEquals(100, engine.getOpenSince(0));
+
+        process(new EventList().add(400, 0, PAUSED));
+        assertSessions(new long[] {0, 100, 400});
+    }
+
+    @Test
+    public void splitAtReportsTheFirstPartAndKeepsTheSessionOpen() {
+        engine.reset(0, false);
+        process(new EventList().add(100, 0, RESUMED));
+
+        engine.splitAt(1000, sink);
+        assertSessions(new long[] {0, 100, 1000});
+        assertEquals(1000, engine.getOpenSince(0));
+
+        process(new EventList().add(1200, 0, PAUSED));
+        assertArrayEquals(new long[] {0, 1000, 1200}, sessions.get(1));
+    }
+
+    @Test
+    public void closeAllEndsOpenSessionsAtTheGivenTime() {
+        engine.reset(0, false);
+        process(new EventList().add(100, 0, RESUMED).add(200, 2, RESUMED));
+
+        engine.closeAll(700, sink);
+        assertSessions(new long[] {0, 100, 700}, new long[] {2, 200, 700});
+        assertFalse(engine.isOpen(2));
+    }
+}
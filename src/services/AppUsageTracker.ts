@@ -11,7 +11,9 @@ export interface AppUsage {
   lastUsed?: Date;
   category: string;
   isActive?: boolean;
-  icon?: string; // Base64 encoded app icon
+  icon?: string; // Local URL of the app icon (data URL for the placeholder)
+  iconKey?: string; // Content hash of the icon, changes when the icon does
+  iconVersion?: number; // Version code of the app the icon belongs to
 }
 
 // Register the AppUsageTracker plugin
@@ -192,7 +194,9 @@ export default class AppUsageTrackerService {
           lastUsed: app.lastUsed ? new Date(app.lastUsed) : undefined,
           category: category,
           isActive: false,
-          icon: app.icon || undefined
+          icon: app.icon || undefined,
+          iconKey: app.iconKey || undefined,
+          iconVersion: app.iconVersion || undefined
         };
       });
 
@@ -9,6 +9,7 @@ interface AppUsageTrackerPlugin {
   startTracking(): Promise<void>;
   stopTracking(): Promise<void>;
   getAppUsageData(): Promise<{ value: string }>;
+  resyncUsage(): Promise<{ data: string }>;
   getSharedPreferences(): Promise<{ 
     totalScreenTime: number;
     lastUpdateTime: number;
@@ -32,6 +33,11 @@ class BackgroundUpdateService {
   private lastBackgroundUpdateTime: number = 0;
   private backgroundUpdateInterval: any = null;
   private sharedPreferences: any = null;
+  // Usage state rebuilt from appUsageUpdate deltas
+  private usageState: { fields: Record<string, any>; apps: Record<string, number> } = { fields: {}, apps: {} };
+  private lastUsageSeq: number = -1;
+  private isResyncing: boolean = false;
+  private pendingDeltas: any[] = [];
 
   private constructor() {
     this.setupEventListeners();
@@ -75,52 +81,120 @@ class BackgroundUpdateService {
 
       this.usageUpdateListener = AppUsageTracker.addListener('appUsageUpdate', (event: any) => {
         try {
-          const currentTime = Date.now();
           console.log('Received app usage update event:', event);
           
-          // Parse the usage data
-          let usageData;
+          // Parse the usage delta
+          let delta;
           try {
-            usageData = JSON.parse(event.usageData);
+            delta = JSON.parse(event.data);
           } catch (e) {
             console.error('Error parsing usage data:', e);
             return;
           }
           
-          const totalMinutes = usageData.totalMinutes;
-          const timestamp = usageData.timestamp;
-          
-          // Update shared preferences
-          this.sharedPreferences = {
-            ...this.sharedPreferences,
-            totalScreenTime: totalMinutes,
-            lastUpdateTime: timestamp
-          };
-          
-          // Always update the last background update time
-          this.lastBackgroundUpdateTime = timestamp;
-          console.log('Background update - Total screen time:', {
-            minutes: totalMinutes,
-            hours: (totalMinutes / 60).toFixed(2),
-            timestamp: new Date(timestamp).toISOString()
-          });
-          
-          // Only trigger callback if enough time has passed
-          if (currentTime - this.lastUpdateTime >= this.UPDATE_INTERVAL) {
-            if (this.updateCallback) {
-              this.updateCallback();
-              this.lastUpdateTime = currentTime;
-            }
-          }
+          this.handleUsageDelta(delta);
         } catch (error) {
           console.error('Error processing background update:', error);
         }
       });
+
+      // The held state starts from a full snapshot, later deltas build on it
+      this.resyncUsage();
     } else {
       console.log('Not a native platform, skipping native listeners');
     }
   }
 
+  /**
+   * Apply an appUsageUpdate delta to the held usage state.
+   * Deltas only carry what changed since the previous one, so a missed sequence
+   * number means the state is stale and a full resync is needed.
+   */
+  private handleUsageDelta(delta: any) {
+    if (this.isResyncing) {
+      // Applied once the snapshot is in
+      this.pendingDeltas.push(delta);
+      return;
+    }
+    if (delta.seq <= this.lastUsageSeq) {
+      // Already contained in the held state
+      return;
+    }
+    if (this.lastUsageSeq < 0 || delta.seq !== this.lastUsageSeq + 1) {
+      console.log('Usage update gap detected:', { expected: this.lastUsageSeq + 1, received: delta.seq });
+      this.pendingDeltas.push(delta);
+      this.resyncUsage();
+      return;
+    }
+
+    const { type, seq, timestamp, apps, removedApps, ...fields } = delta;
+    this.usageState.fields = { ...this.usageState.fields, ...fields };
+    this.usageState.apps = { ...this.usageState.apps, ...(apps || {}) };
+    (removedApps || []).forEach((packageName: string) => {
+      delete this.usageState.apps[packageName];
+    });
+    this.lastUsageSeq = seq;
+    this.onUsageStateChanged(timestamp);
+  }
+
+  /**
+   * Replace the held usage state with a full snapshot from native, then apply
+   * the deltas that arrived after it
+   */
+  private async resyncUsage() {
+    if (this.isResyncing) {
+      return;
+    }
+    this.isResyncing = true;
+    try {
+      const result = await AppUsageTracker.resyncUsage();
+      const { type, seq, timestamp, apps, backgroundSeq, backgroundApps, ...fields } = JSON.parse(result.data);
+      this.usageState = { fields, apps: apps || {} };
+      this.lastUsageSeq = seq;
+      this.onUsageStateChanged(timestamp);
+    } catch (error) {
+      console.error('Error resyncing usage:', error);
+      // Retried on the next delta
+      this.lastUsageSeq = -1;
+      this.pendingDeltas = [];
+      return;
+    } finally {
+      this.isResyncing = false;
+    }
+
+    const pending = this.pendingDeltas.sort((a, b) => a.seq - b.seq);
+    this.pendingDeltas = [];
+    pending.forEach(delta => this.handleUsageDelta(delta));
+  }
+
+  private onUsageStateChanged(timestamp: number) {
+    const currentTime = Date.now();
+    const totalMinutes = this.usageState.fields.totalScreenTime;
+    
+    // Update shared preferences
+    this.sharedPreferences = {
+      ...this.sharedPreferences,
+      totalScreenTime: totalMinutes,
+      lastUpdateTime: timestamp
+    };
+    
+    // Always update the last background update time
+    this.lastBackgroundUpdateTime = timestamp;
+    console.log('Background update - Total screen time:', {
+      minutes: totalMinutes,
+      hours: (totalMinutes / 60).toFixed(2),
+      timestamp: new Date(timestamp).toISOString()
+    });
+    
+    // Only trigger callback if enough time has passed
+    if (currentTime - this.lastUpdateTime >= this.UPDATE_INTERVAL) {
+      if (this.updateCallback) {
+        this.updateCallback();
+        this.lastUpdateTime = currentTime;
+      }
+    }
+  }
+
   private async startBackgroundUpdates() {
     if (this.backgroundUpdateInterval) {
       console.log('Background updates already running');
@@ -250,7 +324,9 @@ class BackgroundUpdateService {
       lastBackgroundUpdateTimeFormatted: this.lastBackgroundUpdateTime ? 
         new Date(this.lastBackgroundUpdateTime).toISOString() : 'Never',
       isBackgroundUpdateRunning: !!this.backgroundUpdateInterval,
-      sharedPreferences: this.sharedPreferences
+      sharedPreferences: this.sharedPreferences,
+      lastUsageSeq: this.lastUsageSeq,
+      usageApps: this.usageState.apps
     };
   }
 
@@ -4,6 +4,18 @@ export interface AppUsageTrackerPlugin {
   startTracking(): Promise<{ value: boolean }>;
   stopTracking(): Promise<{ value: boolean }>;
   getAppUsageData(options?: { startTime?: number; endTime?: number }): Promise<{ data: string }>;
+  getHourlyUsage(options?: { startHour?: number; endHour?: number }): Promise<{ data: string }>;
+  getAppUsagePage(options?: {
+    startTime?: number;
+    endTime?: number;
+    includeIcons?: boolean;
+    minTimeThreshold?: number;
+    filterPackages?: string;
+    filterType?: 'include' | 'exclude';
+    pageSize?: number;
+    cursor?: string;
+    pushRemaining?: boolean;
+  }): Promise<{ data: string }>;
   addListener(
     eventName: 'appChanged',
     listenerFunc: (data: { packageName: string; appName: string }) => void
@@ -12,6 +24,53 @@ export interface AppUsageTrackerPlugin {
     eventName: 'usageUpdate',
     listenerFunc: (data: { usageData: string }) => void
   ): Promise<{ remove: () => void }>;
+  addListener(
+    eventName: 'appUsageChunk',
+    listenerFunc: (data: { data: string }) => void
+  ): Promise<{ remove: () => void }>;
+  addListener(
+    eventName: 'appUsageUpdate' | 'backgroundUsage',
+    listenerFunc: (data: { data: string }) => void
+  ): Promise<{ remove: () => void }>;
+  resyncUsage(): Promise<{ data: string }>;
+  getTopApps(options?: {
+    n?: number;
+    startTime?: number;
+    endTime?: number;
+    includeIcons?: boolean;
+    minTimeThreshold?: number;
+    filterPackages?: string;
+    filterType?: 'include' | 'exclude';
+  }): Promise<{ data: string }>;
+  setAppLimit(options: { packageName: string; minutes: number }): Promise<void>;
+  removeAppLimit(options: { packageName: string }): Promise<{ removed: boolean }>;
+  setGroupLimit(options: { name: string; minutes: number; packages: string[] }): Promise<void>;
+  removeGroupLimit(options: { name: string }): Promise<{ removed: boolean }>;
+  getAppLimits(): Promise<{
+    apps: Array<{ packageName: string; limit: number; used: number }>;
+    groups: Array<{ name: string; limit: number; packages: string[]; used: number }>;
+  }>;
+  getIconCacheStats(): Promise<{
+    memoryBytes: number;
+    memoryMaxBytes: number;
+    memoryEntries: number;
+    hits: number;
+    misses: number;
+    evictions: number;
+    diskBytes: number;
+    diskMaxBytes: number;
+    diskFiles: number;
+    diskHits: number;
+    diskMisses: number;
+  }>;
+  getIconAtlas(options: { packages: string[] }): Promise<{
+    url: string;
+    key: string;
+    cellSize: number;
+    columns: number;
+    rows: number;
+    icons: Array<{ packageName: string; x: number; y: number; hasIcon: boolean }>;
+  }>;
   removeAllListeners(): Promise<void>;
   isBatteryOptimizationExempt(): Promise<{ value: boolean }>;
   requestBatteryOptimizationExemption(): Promise<void>;